@@ -1,29 +1,35 @@
 package com.database;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import com.database.replication.NodeAddress;
-
-public class Client {
+import com.database.replication.PipelinedConnection;
+import com.database.replication.dto.BinaryProtocol;
+import com.database.replication.dto.OperationTypeDto;
+
+/**
+ * Keeps one connection open to the leader and to each replica and sends all operations over them, in the
+ * binary protocol. The asynchronous operations pipeline: many of them can be in flight on a connection.
+ */
+public class Client implements AutoCloseable {
     private static final Logger LOGGER = Logger.getLogger(Client.class.getName());
-    private final NodeAddress leaderAddress;
-    private final Set<NodeAddress> replicaNodes;
+    private final PipelinedConnection leaderConnection;
+    private final List<PipelinedConnection> replicaConnections;
 
     public Client(NodeAddress leaderAddress, Set<NodeAddress> replicaNodes) {
-        this.leaderAddress = leaderAddress;
-        this.replicaNodes = replicaNodes;
+        this.leaderConnection = new PipelinedConnection(leaderAddress);
+        this.replicaConnections = replicaNodes.stream()
+                .map(PipelinedConnection::new)
+                .toList();
 
         Logger rootLogger = Logger.getLogger("");
         rootLogger.setLevel(Level.INFO);
@@ -35,31 +41,23 @@ public class Client {
     }
 
     public void put(Long key, String value) {
-        try (Socket socket = new Socket(leaderAddress.host(), leaderAddress.port());
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-        ) {
+        try {
             System.out.printf("Leader Node: PUT|%d:%s%n", key, value);
-            out.println("PUT|" + key +":" + value);
-            String response = in.readLine();
-            System.out.printf("Leader Node: response=%s%n", response);
+            ByteBuffer response = leaderConnection.send(BinaryProtocol.put(key, value));
+            System.out.printf("Leader Node: response=%s%n", BinaryProtocol.readStatus(response));
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Client PUT error: " + e.getMessage(), e);
         }
     }
 
     public void batchPut(Collection<KeyValue> keyValues) {
-        try (Socket socket = new Socket(leaderAddress.host(), leaderAddress.port());
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-        ) {
-            String operation = keyValues.stream()
-                    .map(kv -> kv.key() + ":" + kv.value())
-                    .collect(Collectors.joining(","));
-            System.out.println("Leader Node: BATCH_PUT|" + operation);
-            out.println("BATCH_PUT|" + operation);
-            String response = in.readLine();
-            System.out.printf("Leader Node: response=%s%n", response);
+        try {
+            BinaryProtocol.FrameWriter request = BinaryProtocol.request(OperationTypeDto.BATCH_PUT)
+                    .writeCount(keyValues.size());
+            keyValues.forEach(kv -> request.writeLong(kv.key()).writeString(kv.value()));
+            System.out.println("Leader Node: BATCH_PUT of " + keyValues.size() + " keys");
+            ByteBuffer response = leaderConnection.send(request.frame());
+            System.out.printf("Leader Node: response=%s%n", BinaryProtocol.readStatus(response));
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Client PUT error: " + e.getMessage(), e);
         }
@@ -68,15 +66,12 @@ public class Client {
     record KeyValue(Long key, String value) {}
 
     public void get(Long key) {
-        for (NodeAddress replicaNode : replicaNodes) {
-            try (Socket socket = new Socket(replicaNode.host(), replicaNode.port());
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-            ) {
+        for (PipelinedConnection replicaConnection : replicaConnections) {
+            NodeAddress replicaNode = replicaConnection.address();
+            try {
                 System.out.printf("Replica Node: %s:%d GET|key=%d%n", replicaNode.host(), replicaNode.port(), key);
-                out.println("GET|" + key);
-                String response = in.readLine();
-                System.out.printf("Replica Node: %s:%d response=%s%n", replicaNode.host(), replicaNode.port(), response);
+                ByteBuffer response = replicaConnection.send(BinaryProtocol.get(key));
+                System.out.printf("Replica Node: %s:%d response=%s%n", replicaNode.host(), replicaNode.port(), describeKeyValue(response));
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Client GET error: " + e.getMessage(), e);
             }
@@ -84,35 +79,63 @@ public class Client {
     }
 
     public void delete(Long key) {
-        try (Socket socket = new Socket(leaderAddress.host(), leaderAddress.port());
-                PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-        ) {
+        try {
             System.out.println("Leader Node: DEL|" + key);
-            out.println("DEL|" + key);
-            String response = in.readLine();
-            System.out.printf("Leader Node: response=%s%n", response);
+            ByteBuffer response = leaderConnection.send(BinaryProtocol.delete(key));
+            System.out.printf("Leader Node: response=%s%n", BinaryProtocol.readStatus(response));
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Client DEL error: " + e.getMessage(), e);
         }
     }
 
     private void getRange(long from, long to) {
-        for (NodeAddress replicaNode : replicaNodes) {
-            try (Socket socket = new Socket(replicaNode.host(), replicaNode.port());
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))
-            ) {
+        for (PipelinedConnection replicaConnection : replicaConnections) {
+            NodeAddress replicaNode = replicaConnection.address();
+            try {
                 System.out.printf("Replica Node: %s:%d GET_RANGE|%d:%d%n", replicaNode.host(), replicaNode.port(), from, to);
-                out.println("GET_RANGE|" + from + ":" + to);
-                String response = in.readLine();
-                System.out.printf("Replica Node: %s:%d response=%s%n", replicaNode.host(), replicaNode.port(), response);
+                ByteBuffer response = replicaConnection.send(BinaryProtocol.getRange(from, to));
+                System.out.printf("Replica Node: %s:%d response=%s%n", replicaNode.host(), replicaNode.port(), describeKeyValues(response));
             } catch (IOException e) {
                 LOGGER.log(Level.SEVERE, "Client GET_RANGE error: " + e.getMessage(), e);
             }
         }
     }
 
+    public CompletableFuture<BinaryProtocol.Status> putAsync(Long key, String value) {
+        return leaderConnection.sendAsync(BinaryProtocol.put(key, value))
+                .thenApply(BinaryProtocol::readStatus);
+    }
+
+    /**
+     * Reads from one of the replicas, chosen by the key; the value is empty if the key is not stored.
+     */
+    public CompletableFuture<String> getAsync(Long key) {
+        PipelinedConnection replicaConnection = replicaConnections.get(Math.floorMod(key, replicaConnections.size()));
+        return replicaConnection.sendAsync(BinaryProtocol.get(key))
+                .thenApply(response -> {
+                    BinaryProtocol.Status status = BinaryProtocol.readStatus(response);
+                    if (status != BinaryProtocol.Status.OK) {
+                        throw new IllegalStateException("GET " + key + " failed: " + status);
+                    }
+                    return BinaryProtocol.readKeyValue(response).value();
+                });
+    }
+
+    private static String describeKeyValue(ByteBuffer response) {
+        BinaryProtocol.Status status = BinaryProtocol.readStatus(response);
+        return status == BinaryProtocol.Status.OK ? BinaryProtocol.readKeyValue(response).serialize() : status.name();
+    }
+
+    private static String describeKeyValues(ByteBuffer response) {
+        BinaryProtocol.Status status = BinaryProtocol.readStatus(response);
+        return status == BinaryProtocol.Status.OK ? BinaryProtocol.readKeyValues(response).serialize() : status.name();
+    }
+
+    @Override
+    public void close() {
+        leaderConnection.close();
+        replicaConnections.forEach(PipelinedConnection::close);
+    }
 
     public static void main(String[] args) throws InterruptedException {
         Client client = new Client(new NodeAddress("127.0.0.1", 27000),
@@ -142,10 +165,30 @@ public class Client {
         end = System.currentTimeMillis();
         System.out.println("Time taken GET_RANGE: " + (end - start) + "ms");
 
+        start = System.currentTimeMillis();
+        List<CompletableFuture<BinaryProtocol.Status>> puts = new LinkedList<>();
+        for (long i = 2_000_000; i < 2_010_000; i++) {
+            puts.add(client.putAsync(i, "__pipelined__" + i));
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).join();
+        end = System.currentTimeMillis();
+        System.out.println("Time taken 10000 pipelined PUT: " + (end - start) + "ms");
+
+        start = System.currentTimeMillis();
+        List<CompletableFuture<String>> gets = new LinkedList<>();
+        for (long i = 2_000_000; i < 2_010_000; i++) {
+            gets.add(client.getAsync(i));
+        }
+        CompletableFuture.allOf(gets.toArray(CompletableFuture[]::new)).join();
+        end = System.currentTimeMillis();
+        System.out.println("Time taken 10000 pipelined GET: " + (end - start) + "ms");
+
         client.get(100_000L);
 
         client.delete(100_000L);
 
         client.get(100_000L);
+
+        client.close();
     }
 }
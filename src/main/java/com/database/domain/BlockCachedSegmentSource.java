@@ -0,0 +1,93 @@
+package com.database.domain;
+
+import java.nio.ByteBuffer;
+
+import com.database.domain.heuristic.LongKeyCache;
+
+/**
+ * Serves reads of a segment from fixed size blocks kept in a cache shared by all segments, keyed by segment id
+ * and block number. Index slots probed by a binary search and values read next to each other then cost one
+ * positional read per block instead of one per access. Segment ids are never reused, so blocks of deleted
+ * segments are never hit again and just age out.
+ */
+public class BlockCachedSegmentSource implements SegmentSource {
+    private final SegmentSource source;
+    private final long segmentId;
+    private final LongKeyCache<byte[]> blockCache;
+    private final int blockBytes;
+
+    public BlockCachedSegmentSource(SegmentSource source, long segmentId, LongKeyCache<byte[]> blockCache, int blockBytes) {
+        this.source = source;
+        this.segmentId = segmentId;
+        this.blockCache = blockCache;
+        this.blockBytes = blockBytes;
+    }
+
+    @Override
+    public long size() {
+        return source.size();
+    }
+
+    @Override
+    public long readLong(long position) {
+        return read(position, Long.BYTES).getLong(0);
+    }
+
+    @Override
+    public int readInt(long position) {
+        return read(position, Integer.BYTES).getInt(0);
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) {
+        return read(position, length, true);
+    }
+
+    /**
+     * A read not filling the cache still uses the blocks already cached.
+     */
+    @Override
+    public ByteBuffer read(long position, int length, boolean fillCache) {
+        long firstBlock = position / blockBytes;
+        long lastBlock = (position + length - 1) / blockBytes;
+        if (length > 0 && firstBlock == lastBlock) {
+            byte[] block = block(firstBlock, fillCache);
+            if (block != null) {
+                return ByteBuffer.wrap(block).slice((int) (position - firstBlock * blockBytes), length);
+            }
+        }
+        if (!fillCache) {
+            return source.read(position, length);
+        }
+        byte[] bytes = new byte[length];
+        for (long blockNumber = firstBlock; blockNumber <= lastBlock && length > 0; blockNumber++) {
+            long blockStart = blockNumber * blockBytes;
+            long from = Math.max(position, blockStart);
+            long to = Math.min(position + length, blockStart + blockBytes);
+            System.arraycopy(block(blockNumber, true), (int) (from - blockStart),
+                    bytes, (int) (from - position), (int) (to - from));
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    /**
+     * Returns the block from the cache, reading and caching it on a miss if asked to, or null.
+     */
+    private byte[] block(long blockNumber, boolean fillCache) {
+        long key = segmentId << 32 | blockNumber;
+        byte[] block = blockCache.getIfPresent(key);
+        if (block != null || !fillCache) {
+            return block;
+        }
+        long blockStart = blockNumber * blockBytes;
+        ByteBuffer buffer = source.read(blockStart, (int) Math.min(blockBytes, source.size() - blockStart));
+        block = buffer.array();
+        blockCache.putIfAbsent(key, block);
+        return block;
+    }
+}
@@ -0,0 +1,5 @@
+package com.database.domain;
+
+import java.util.List;
+
+public record Compaction(List<Segment> inputs, int outputLevel, long maxOutputSegmentBytes) {}
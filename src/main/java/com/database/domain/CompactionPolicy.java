@@ -0,0 +1,14 @@
+package com.database.domain;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface CompactionPolicy {
+
+    /**
+     * @param segments live segments in read order
+     */
+    Optional<Compaction> pickCompaction(List<Segment> segments);
+
+    String name();
+}
@@ -0,0 +1,80 @@
+package com.database.domain;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class CompactionScheduler {
+    private static final Logger LOGGER = Logger.getLogger(CompactionScheduler.class.getName());
+
+    private final PersistentStorage persistentStorage;
+    private final CompactionPolicy compactionPolicy;
+    private final ExecutorService executorService;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // set by every request, so a request arriving while a run is finishing is not lost
+    private final AtomicBoolean requested = new AtomicBoolean(false);
+
+    private volatile boolean closed;
+
+    public CompactionScheduler(PersistentStorage persistentStorage, CompactionPolicy compactionPolicy) {
+        this.persistentStorage = persistentStorage;
+        this.compactionPolicy = compactionPolicy;
+        this.executorService = Executors.newFixedThreadPool(1);
+    }
+
+    public void maybeScheduleCompaction() {
+        requested.set(true);
+        if (!closed && scheduled.compareAndSet(false, true)) {
+            try {
+                executorService.submit(this::compactUntilBalanced);
+            } catch (RejectedExecutionException e) {
+                // closed meanwhile
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Lets a running compaction finish and waits for it; no compaction starts afterwards.
+     */
+    public void close() {
+        closed = true;
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.INFO, "Waiting for a compaction to finish");
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A request made after the last pick but before the flag is cleared cannot schedule a run of its own,
+     * so it is picked up here instead.
+     */
+    private void compactUntilBalanced() {
+        do {
+            requested.set(false);
+            try {
+                Optional<Compaction> compaction;
+                while (!closed
+                        && (compaction = compactionPolicy.pickCompaction(persistentStorage.segments())).isPresent()) {
+                    persistentStorage.compact(compaction.get());
+                    LOGGER.log(Level.INFO, "Compaction (" + compactionPolicy.name() + "): "
+                            + persistentStorage.compactionStats().summary(persistentStorage.segments()));
+                }
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Compaction error: " + e.getMessage(), e);
+            } finally {
+                scheduled.set(false);
+            }
+        } while (!closed && requested.get() && scheduled.compareAndSet(false, true));
+    }
+}
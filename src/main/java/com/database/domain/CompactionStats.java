@@ -0,0 +1,54 @@
+package com.database.domain;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CompactionStats {
+    private final AtomicLong flushedBytes = new AtomicLong();
+    private final AtomicLong compactionReadBytes = new AtomicLong();
+    private final AtomicLong compactionWrittenBytes = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    void recordFlush(long bytes) {
+        flushedBytes.addAndGet(bytes);
+    }
+
+    void recordCompaction(long readBytes, long writtenBytes) {
+        compactionReadBytes.addAndGet(readBytes);
+        compactionWrittenBytes.addAndGet(writtenBytes);
+        compactions.incrementAndGet();
+    }
+
+    /**
+     * Bytes written to segments (flushes and compactions) per byte flushed from memtables.
+     */
+    public double writeAmplification() {
+        long flushed = flushedBytes.get();
+        return flushed == 0 ? 0 : (double) (flushed + compactionWrittenBytes.get()) / flushed;
+    }
+
+    /**
+     * Estimated as bytes of all segments per bytes of the biggest sorted run: segments of level 0 sharing
+     * a sequence form a sorted run, every deeper level is one sorted run.
+     */
+    public static double spaceAmplification(List<Segment> segments) {
+        long totalBytes = 0;
+        Map<String, Long> runBytes = new HashMap<>();
+        for (Segment segment : segments) {
+            totalBytes += segment.sizeBytes();
+            String run = segment.level() == 0 ? "0:" + segment.sequence() : String.valueOf(segment.level());
+            runBytes.merge(run, segment.sizeBytes(), Long::sum);
+        }
+        long biggestRun = runBytes.values().stream().mapToLong(Long::longValue).max().orElse(0);
+        return biggestRun == 0 ? 0 : (double) totalBytes / biggestRun;
+    }
+
+    public String summary(List<Segment> segments) {
+        return String.format("compactions=%d, flushed=%dB, compaction read=%dB, compaction written=%dB, "
+                        + "segments=%d, write amplification=%.2f, space amplification=%.2f",
+                compactions.get(), flushedBytes.get(), compactionReadBytes.get(), compactionWrittenBytes.get(),
+                segments.size(), writeAmplification(), spaceAmplification(segments));
+    }
+}
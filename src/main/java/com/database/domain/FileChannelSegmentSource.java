@@ -0,0 +1,64 @@
+package com.database.domain;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Keeps the file open for the lifetime of the segment and reads it with positional reads.
+ */
+public class FileChannelSegmentSource implements SegmentSource {
+    private final FileChannel channel;
+    private final long size;
+
+    public FileChannelSegmentSource(File file) {
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = channel.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public long readLong(long position) {
+        return read(position, Long.BYTES).getLong(0);
+    }
+
+    @Override
+    public int readInt(long position) {
+        return read(position, Integer.BYTES).getInt(0);
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of segment at " + (position + buffer.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
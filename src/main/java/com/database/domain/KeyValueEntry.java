@@ -25,8 +25,19 @@ public class KeyValueEntry implements Comparable<KeyValueEntry> {
         return value;
     }
 
-    String serialize() {
-        return key + ":" + value;
+    /**
+     * Length of the value encoded as UTF-8, which is what the log and the segments store, counted without encoding it.
+     */
+    public int valueBytes() {
+        int bytes = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // a surrogate pair is two chars for four bytes
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return bytes;
     }
 
     public static KeyValueEntry empty(Long key) {
@@ -1,71 +1,119 @@
 package com.database.domain;
 
-import static com.database.domain.Parameters.DEFAULT_MEM_TABLE_MAX_SIZE;
-import static com.database.domain.Parameters.LRU_CACHE_SIZE;
+import static com.database.domain.Parameters.WRITE_LOCK_STRIPES;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
-import java.util.stream.Stream;
+import java.util.concurrent.locks.StampedLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
-import com.database.domain.heuristic.LRUCache;
+import com.database.domain.heuristic.Cache;
+import com.database.domain.heuristic.CacheStats;
 
+/**
+ * Reads never lock, except to wait for a batch being inserted. Writers share the read side of {@code memTableLock} and
+ * only a memtable switch takes its write side; a striped per key lock keeps the order of the write-ahead log and of the
+ * memtable the same for writes to one key. A full memtable becomes immutable and waits for its flush in a bounded list,
+ * the {@link WriteController} slows down or stalls writers while that list fills up.
+ * <p>
+ * A batch is inserted under the write side of {@code batchLock}. Readers look at the memtables optimistically and look
+ * again under its read side if a batch was inserted meanwhile, so they see a batch entirely or not at all.
+ * <p>
+ * Only {@link java.util.concurrent.locks} locks are used, so writers blocked on them from virtual threads release their
+ * carrier threads.
+ */
 public class LSMTree {
+    private static final Logger LOGGER = Logger.getLogger(LSMTree.class.getName());
+
     private final PersistentStorage persistentStorage;
-    private final LRUCache<Long, KeyValueEntry> LRUCache;
+    private final CompactionScheduler compactionScheduler;
+    private final Cache<Long, KeyValueEntry> readCache;
     private final WriteAheadLog writeAheadLogFile;
     private final LogicalTimeProvider logicalTimeProvider;
     private final ExecutorService executorService;
-    private final WriteLock writeLock;
+    private final ReentrantReadWriteLock memTableLock;
+    private final Lock[] keyLocks;
+    private final WriteController writeController;
+    private final Lock immutableMemTablesLock = new ReentrantLock();
+    private final StampedLock batchLock = new StampedLock();
 
-    private MemTable<KeyValueEntry> memTable;
+    // a sealed memtable joins immutableMemTables before it is replaced here, so readers going through memTable
+    // and then immutableMemTables never miss it
+    private volatile MemTable memTable;
+    // newest first, each one dropped once its segments are visible
+    private volatile List<ImmutableMemTable> immutableMemTables = List.of();
 
     public LSMTree(String storageDirectory) {
         this.logicalTimeProvider = new LogicalTimeProvider();
         this.persistentStorage = new PersistentStorage(storageDirectory);
+        this.compactionScheduler = new CompactionScheduler(persistentStorage, Parameters.compactionPolicy());
         this.executorService = Executors.newFixedThreadPool(1);
         this.memTable = newMemTable();
-        this.LRUCache = new LRUCache<>(LRU_CACHE_SIZE);
+        this.readCache = Parameters.readCache();
 
         this.writeAheadLogFile = new WriteAheadLog(storageDirectory, logicalTimeProvider);
-        ReentrantReadWriteLock reentrantReadWriteLock = new ReentrantReadWriteLock();
-        this.writeLock = reentrantReadWriteLock.writeLock();
+        this.memTableLock = new ReentrantReadWriteLock();
+        this.keyLocks = new Lock[WRITE_LOCK_STRIPES];
+        for (int i = 0; i < keyLocks.length; i++) {
+            keyLocks[i] = new ReentrantLock();
+        }
+        this.writeController = Parameters.writeController();
 
-        replayFromWriteAheadLogFiles();
+        recoverFromWriteAheadLogFiles();
+        compactionScheduler.maybeScheduleCompaction();
     }
 
-    private void replayFromWriteAheadLogFiles() {
+    /**
+     * Every log newer than the checkpoint holds the operations of a memtable that was not flushed. The logs are
+     * decoded and loaded into memtables in parallel, without being logged again, and then flushed in version
+     * order like any sealed memtable, each flush removing its log.
+     */
+    private void recoverFromWriteAheadLogFiles() {
+        long logCheckpoint = persistentStorage.logCheckpoint();
+        List<ImmutableMemTable> recovered = writeAheadLogFile.recover(logCheckpoint).parallelStream()
+                .map(log -> new ImmutableMemTable(load(log.operations()), log.version()))
+                .toList();
+        long lastVersion = logCheckpoint;
+        for (ImmutableMemTable immutableMemTable : recovered) {
+            writeController.memTableSealed();
+            addImmutableMemTable(immutableMemTable);
+            executorService.submit(() -> persist(immutableMemTable));
+            lastVersion = Math.max(lastVersion, immutableMemTable.logVersion());
+        }
+        logicalTimeProvider.advanceTo(lastVersion + 1);
         writeAheadLogFile.newLogFile();
+    }
 
-        List<Operation> uncommitedOperations = writeAheadLogFile.getUncommitedOperations();
-        for (Operation operation : uncommitedOperations) {
-            switch (operation.type()) {
-                case PUT -> put(operation.entries().getFirst());
-                case BATCH_PUT -> batchPut(operation.entries());
-                case DEL -> delete(operation.entries().getFirst().key());
-            }
+    private static MemTable load(List<Operation> operations) {
+        MemTable memTable = newMemTable();
+        for (Operation operation : operations) {
+            // a deletion is logged with its tombstone
+            operation.entries().forEach(memTable::add);
         }
-        writeAheadLogFile.removePreviousLogFiles(logicalTimeProvider.getVersion());
+        return memTable;
     }
 
     public void batchPut(List<KeyValueEntry> keyValues) {
+        List<KeyValueEntry> prunedKeyValues = prunKeyValues(keyValues);
+        if (prunedKeyValues.isEmpty()) {
+            return;
+        }
+        writeController.beforeWrite(prunedKeyValues.stream().mapToLong(LSMTree::writeBytes).sum());
+        memTableLock.readLock().lock();
         try {
-            this.writeLock.lock();
-            List<KeyValueEntry> prunedKeyValues = prunKeyValues(keyValues);
-            prunedKeyValues.forEach(this::put);
+            write(new Operation(PersistableOperationType.BATCH_PUT, prunedKeyValues));
         } finally {
-            this.writeLock.unlock();
+            memTableLock.readLock().unlock();
         }
+        persistMemTableIfFull();
     }
 
     public static List<KeyValueEntry> prunKeyValues(List<KeyValueEntry> keyValues) {
@@ -73,94 +121,286 @@ public class LSMTree {
     }
 
     public void put(KeyValueEntry keyValue) {
-        writeAheadLogFile.append(new Operation(PersistableOperationType.PUT, keyValue).serialize());
-
-        memTable.add(keyValue.key(), keyValue);
-        LRUCache.put(keyValue.key(), keyValue);
-
+        writeController.beforeWrite(writeBytes(keyValue));
+        memTableLock.readLock().lock();
+        try {
+            write(PersistableOperationType.PUT, keyValue);
+        } finally {
+            memTableLock.readLock().unlock();
+        }
         persistMemTableIfFull();
     }
 
     public KeyValueEntry read(Long key) {
-        //TODO: using library, we could mark method as Nullable and return null,
-        // because Optional adds overhead in terms of memory and GC process
-        Optional<KeyValueEntry> valueFromMemTable = memTable.get(key);
-        if (valueFromMemTable.isPresent()) {
-            return valueFromMemTable.get();
+        long stamp = batchLock.tryOptimisticRead();
+        KeyValueEntry valueFromMemTables = readMemTables(key);
+        if (!batchLock.validate(stamp)) {
+            stamp = batchLock.readLock();
+            try {
+                valueFromMemTables = readMemTables(key);
+            } finally {
+                batchLock.unlockRead(stamp);
+            }
+        }
+        if (valueFromMemTables != null) {
+            return valueFromMemTables;
         }
 
-        Optional<KeyValueEntry> valueFromLRU = LRUCache.get(key);
-        if (valueFromLRU.isPresent()) {
-            return valueFromLRU.get();
+        // the lookups are nullable, a read allocates no Optional
+        KeyValueEntry valueFromCache = readCache.getIfPresent(key);
+        if (valueFromCache != null) {
+            return valueFromCache;
         }
 
-        Optional<KeyValueEntry> valueFromPersistentStorage = persistentStorage.read(key);
+        KeyValueEntry valueFromPersistentStorage = persistentStorage.readIfPresent(key);
 
-        KeyValueEntry returnedValue = valueFromPersistentStorage
-                .orElse(KeyValueEntry.empty(key));
+        KeyValueEntry returnedValue = valueFromPersistentStorage != null
+                ? valueFromPersistentStorage
+                : KeyValueEntry.empty(key);
 
-        LRUCache.put(key, returnedValue);
+        // a write racing with this read has already put the newer value
+        readCache.putIfAbsent(key, returnedValue);
 
         return returnedValue;
     }
 
+    private KeyValueEntry readMemTables(Long key) {
+        KeyValueEntry valueFromMemTable = memTable.getIfPresent(key);
+        if (valueFromMemTable != null) {
+            return valueFromMemTable;
+        }
+        for (ImmutableMemTable immutableMemTable : immutableMemTables) {
+            KeyValueEntry valueFromImmutableMemTable = immutableMemTable.memTable().getIfPresent(key);
+            if (valueFromImmutableMemTable != null) {
+                return valueFromImmutableMemTable;
+            }
+        }
+        return null;
+    }
+
     public List<KeyValueEntry> readRange(Long from, Long to) {
+        List<KeyValueEntry> entries = new ArrayList<>();
+        try (RangeIterator iterator = scan(from, to)) {
+            iterator.forEachRemaining(entries::add);
+        }
+        return entries;
+    }
+
+    /**
+     * Merges the memtables and the persistent storage, so the cost depends on the number of stored keys in the
+     * range rather than on its width. The part of the range held in memtables is copied up front, so a batch
+     * is seen entirely or not at all; the segments are read lazily. The iterator has to be closed.
+     */
+    public RangeIterator scan(Long from, Long to) {
         if (from > to) {
             throw new IllegalArgumentException("'from' cannot be greater than 'to'");
         }
-        Map<Long, KeyValueEntry> entriesInMemTable = memTable.rangeScan(from, to);
-
-        List<Long> keysToFetch = new ArrayList<>();
-        LongStream.range(from, to + 1)
-                .forEach(value -> {
-                    if (!entriesInMemTable.containsKey(value)) {
-                        keysToFetch.add(value);
-                    }
-                });
-        List<KeyValueEntry> entriesInPersistentStorage = persistentStorage.readMany(keysToFetch);
+        long stamp = batchLock.tryOptimisticRead();
+        List<KeyValueEntry> entriesInMemTables = scanMemTables(from, to);
+        if (!batchLock.validate(stamp)) {
+            stamp = batchLock.readLock();
+            try {
+                entriesInMemTables = scanMemTables(from, to);
+            } finally {
+                batchLock.unlockRead(stamp);
+            }
+        }
+        // taken last: a memtable leaves the list only after its segments were published
+        RangeIterator entriesInPersistentStorage = persistentStorage.scan(from, to);
+        return new RangeIterator(
+                new MergingIterator(List.of(entriesInMemTables.iterator(), entriesInPersistentStorage), true),
+                entriesInPersistentStorage::close);
+    }
 
-        return Stream.of(entriesInMemTable.values(), entriesInPersistentStorage)
-                .flatMap(Collection::stream)
-                .sorted(Comparator.comparing(KeyValueEntry::key))
-                .filter(e -> !Objects.equals(e.value(), KeyValueEntry.EMPTY_VALUE))
-                .collect(Collectors.toList());
+    /**
+     * The newest entry of every key in the range, tombstones included so they still hide older segments.
+     */
+    private List<KeyValueEntry> scanMemTables(Long from, Long to) {
+        List<Iterator<KeyValueEntry>> sources = new ArrayList<>();
+        sources.add(memTable.iterator(from, to));
+        for (ImmutableMemTable immutableMemTable : immutableMemTables) {
+            sources.add(immutableMemTable.memTable().iterator(from, to));
+        }
+        List<KeyValueEntry> entries = new ArrayList<>();
+        new MergingIterator(sources, false).forEachRemaining(entries::add);
+        return entries;
     }
 
     public void delete(Long key) {
-        KeyValueEntry entry = new KeyValueEntry(key);
+        writeController.beforeWrite(Long.BYTES);
+        memTableLock.readLock().lock();
         try {
-            this.writeLock.lock();
-            writeAheadLogFile.append(new Operation(PersistableOperationType.DEL, entry).serialize());
-            memTable.add(key, entry);
-            LRUCache.put(key, KeyValueEntry.empty(key));
+            write(PersistableOperationType.DEL, new KeyValueEntry(key));
         } finally {
-            this.writeLock.unlock();
+            memTableLock.readLock().unlock();
         }
+        persistMemTableIfFull();
+    }
+
+    /**
+     * Waits for the flushes of the sealed memtables and for a running compaction, then closes the log. The active
+     * memtable is not flushed, its log is replayed on the next start. The tree must not be used afterwards.
+     */
+    public void close() {
+        executorService.shutdown();
+        try {
+            while (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.INFO, "Waiting for " + immutableMemTables.size() + " memtables to be flushed");
+            }
+        } catch (InterruptedException e) {
+            executorService.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        compactionScheduler.close();
+        writeAheadLogFile.close();
+    }
+
+    /**
+     * Has to be called with the read lock of {@code memTableLock} held, so the memtable cannot be switched
+     * between the log append and the insert.
+     */
+    private void write(PersistableOperationType type, KeyValueEntry entry) {
+        write(new Operation(type, entry));
     }
 
+    /**
+     * Logs all entries of the operation as one record, so a batch survives a crash entirely or not at all.
+     * The locks of all its keys are taken in stripe order. The entries of a batch are inserted under the write
+     * side of {@code batchLock}, so readers see them all at once.
+     */
+    private void write(Operation operation) {
+        boolean[] stripes = new boolean[keyLocks.length];
+        for (KeyValueEntry entry : operation.entries()) {
+            stripes[stripe(entry.key())] = true;
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i]) {
+                keyLocks[i].lock();
+            }
+        }
+        try {
+            writeAheadLogFile.append(operation);
+            if (operation.entries().size() == 1) {
+                insert(operation.entries().getFirst());
+            } else {
+                long stamp = batchLock.writeLock();
+                try {
+                    operation.entries().forEach(this::insert);
+                } finally {
+                    batchLock.unlockWrite(stamp);
+                }
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                if (stripes[i]) {
+                    keyLocks[i].unlock();
+                }
+            }
+        }
+    }
+
+    private void insert(KeyValueEntry entry) {
+        memTable.add(entry);
+        readCache.put(entry.key(), entry);
+    }
+
+    private int stripe(long key) {
+        return (int) (key ^ (key >>> 32)) & (keyLocks.length - 1);
+    }
+
+    /**
+     * Must not be called with the read lock held: it cannot be upgraded to the write lock.
+     */
     private void persistMemTableIfFull() {
         if (memTable.isFull()) {
+            memTableLock.writeLock().lock();
             try {
-                this.writeLock.lock();
                 if (memTable.isFull()) {
-                    MemTable<KeyValueEntry> memTableToPersist = memTable;
+                    writeController.memTableSealed();
+                    ImmutableMemTable memTableToPersist =
+                            new ImmutableMemTable(memTable, logicalTimeProvider.getVersion());
+                    addImmutableMemTable(memTableToPersist);
                     memTable = newMemTable();
 
                     logicalTimeProvider.incrementVersion();
                     writeAheadLogFile.newLogFile();
 
-                    executorService.submit(() -> {
-                        new PersistMemTable(memTableToPersist, persistentStorage).run();
-                        writeAheadLogFile.removePreviousLogFiles(logicalTimeProvider.getVersion());
-                    });
+                    executorService.submit(() -> persist(memTableToPersist));
                 }
             } finally {
-                this.writeLock.unlock();
+                memTableLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Flushes run one at a time in sealing order, so once a memtable is persisted every log up to its version
+     * is obsolete. A failed flush is retried with a growing backoff until it succeeds; the later flushes wait
+     * behind it, so neither the log checkpoint nor the removal of logs passes a memtable that is not on disk.
+     * Meanwhile the sealed memtables pile up and the {@link WriteController} stalls the writers.
+     */
+    private void persist(ImmutableMemTable immutableMemTable) {
+        long backoffMillis = Parameters.FLUSH_RETRY_INITIAL_BACKOFF_MILLIS;
+        while (true) {
+            try {
+                new PersistMemTable(immutableMemTable.memTable(), immutableMemTable.logVersion(), persistentStorage).run();
+                break;
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Cannot persist memtable of log version " + immutableMemTable.logVersion()
+                        + ", retrying in " + backoffMillis + " ms: " + e.getMessage(), e);
             }
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backoffMillis = Math.min(2 * backoffMillis, Parameters.FLUSH_RETRY_MAX_BACKOFF_MILLIS);
         }
+        removeImmutableMemTable(immutableMemTable);
+        immutableMemTable.memTable().close();
+        writeController.memTableFlushed();
+        writeAheadLogFile.removePreviousLogFiles(immutableMemTable.logVersion() + 1);
+        compactionScheduler.maybeScheduleCompaction();
+        LOGGER.log(Level.INFO, "Read cache (" + Parameters.READ_CACHE_POLICY + "): " + readCacheStats());
+        persistentStorage.blockCacheStats()
+                .ifPresent(stats -> LOGGER.log(Level.INFO, "Block cache: " + stats));
+    }
+
+    public CacheStats readCacheStats() {
+        return readCache.stats();
     }
 
-    private static MemTable<KeyValueEntry> newMemTable() {
-        return new MemTable<>(DEFAULT_MEM_TABLE_MAX_SIZE);
+    private void addImmutableMemTable(ImmutableMemTable immutableMemTable) {
+        immutableMemTablesLock.lock();
+        try {
+            List<ImmutableMemTable> updated = new ArrayList<>(immutableMemTables.size() + 1);
+            updated.add(immutableMemTable);
+            updated.addAll(immutableMemTables);
+            immutableMemTables = List.copyOf(updated);
+        } finally {
+            immutableMemTablesLock.unlock();
+        }
     }
+
+    private void removeImmutableMemTable(ImmutableMemTable immutableMemTable) {
+        immutableMemTablesLock.lock();
+        try {
+            List<ImmutableMemTable> updated = new ArrayList<>(immutableMemTables);
+            updated.remove(immutableMemTable);
+            immutableMemTables = List.copyOf(updated);
+        } finally {
+            immutableMemTablesLock.unlock();
+        }
+    }
+
+    private static long writeBytes(KeyValueEntry entry) {
+        return Long.BYTES + entry.valueBytes();
+    }
+
+    private static MemTable newMemTable() {
+        return Parameters.memTable();
+    }
+
+    private record ImmutableMemTable(MemTable memTable, long logVersion) {}
 }
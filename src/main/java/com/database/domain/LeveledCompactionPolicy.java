@@ -0,0 +1,92 @@
+package com.database.domain;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Level 0 holds flushed segments which may overlap. Once it has enough sorted runs, the segments of one flush sharing a
+ * sequence, they are merged with the overlapping part of level 1. Every deeper level holds non-overlapping segments and
+ * is allowed to be {@code levelSizeMultiplier} times bigger than the previous one; an oversized level pushes one
+ * segment, chosen round-robin over the key space, into the overlapping segments of the next level.
+ */
+public class LeveledCompactionPolicy implements CompactionPolicy {
+    private final int level0CompactionTrigger;
+    private final long levelBaseMaxBytes;
+    private final int levelSizeMultiplier;
+    private final long targetSegmentBytes;
+    private final Map<Integer, Long> compactionPointers = new HashMap<>();
+
+    public LeveledCompactionPolicy(int level0CompactionTrigger, long levelBaseMaxBytes,
+            int levelSizeMultiplier, long targetSegmentBytes
+    ) {
+        this.level0CompactionTrigger = level0CompactionTrigger;
+        this.levelBaseMaxBytes = levelBaseMaxBytes;
+        this.levelSizeMultiplier = levelSizeMultiplier;
+        this.targetSegmentBytes = targetSegmentBytes;
+    }
+
+    @Override
+    public Optional<Compaction> pickCompaction(List<Segment> segments) {
+        List<Segment> level0 = segmentsOfLevel(segments, 0);
+        if (sortedRuns(level0) >= level0CompactionTrigger) {
+            long minKey = level0.stream().mapToLong(Segment::minKey).min().getAsLong();
+            long maxKey = level0.stream().mapToLong(Segment::maxKey).max().getAsLong();
+            List<Segment> inputs = new ArrayList<>(level0);
+            inputs.addAll(overlapping(segmentsOfLevel(segments, 1), minKey, maxKey));
+            return Optional.of(new Compaction(inputs, 1, targetSegmentBytes));
+        }
+
+        int deepestLevel = segments.stream().mapToInt(Segment::level).max().orElse(0);
+        long maxLevelBytes = levelBaseMaxBytes;
+        for (int level = 1; level <= deepestLevel; level++, maxLevelBytes *= levelSizeMultiplier) {
+            List<Segment> levelSegments = segmentsOfLevel(segments, level);
+            long levelBytes = levelSegments.stream().mapToLong(Segment::sizeBytes).sum();
+            if (levelBytes <= maxLevelBytes) {
+                continue;
+            }
+            long pointer = compactionPointers.getOrDefault(level, Long.MIN_VALUE);
+            Segment picked = levelSegments.stream()
+                    .filter(segment -> segment.minKey() > pointer)
+                    .findFirst()
+                    .orElse(levelSegments.getFirst());
+            compactionPointers.put(level, picked.maxKey());
+
+            List<Segment> inputs = new ArrayList<>();
+            inputs.add(picked);
+            inputs.addAll(overlapping(segmentsOfLevel(segments, level + 1), picked.minKey(), picked.maxKey()));
+            return Optional.of(new Compaction(inputs, level + 1, targetSegmentBytes));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String name() {
+        return "leveled";
+    }
+
+    private static List<Segment> segmentsOfLevel(List<Segment> segments, int level) {
+        return segments.stream()
+                .filter(segment -> segment.level() == level)
+                .sorted(level == 0
+                        ? Comparator.comparingLong(Segment::sequence).reversed()
+                        : Comparator.comparingLong(Segment::minKey))
+                .toList();
+    }
+
+    /**
+     * A flush splits its run into several segments of one sequence, which do not overlap each other.
+     */
+    private static long sortedRuns(List<Segment> level0) {
+        return level0.stream().mapToLong(Segment::sequence).distinct().count();
+    }
+
+    private static List<Segment> overlapping(List<Segment> segments, long minKey, long maxKey) {
+        return segments.stream()
+                .filter(segment -> segment.overlaps(minKey, maxKey))
+                .toList();
+    }
+}
@@ -0,0 +1,15 @@
+package com.database.domain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination of the write-ahead log records of one memtable version.
+ */
+public interface LogFile {
+    void write(ByteBuffer[] records) throws IOException;
+
+    void force() throws IOException;
+
+    void close() throws IOException;
+}
@@ -13,4 +13,8 @@ public class LogicalTimeProvider implements ReadOnlyLogicalTimeProvider {
     void incrementVersion() {
         currentTime.incrementAndGet();
     }
+
+    void advanceTo(long version) {
+        currentTime.accumulateAndGet(version, Math::max);
+    }
 }
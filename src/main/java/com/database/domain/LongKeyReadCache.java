@@ -0,0 +1,41 @@
+package com.database.domain;
+
+import com.database.domain.heuristic.Cache;
+import com.database.domain.heuristic.CacheStats;
+import com.database.domain.heuristic.LongKeyCache;
+
+/**
+ * Read cache keeping the entries in a {@link LongKeyCache}, so a cached key costs its slot in a few primitive
+ * arrays and the entry itself instead of a boxed key and map and list nodes besides. A hit returns the cached
+ * entry and allocates nothing.
+ */
+public class LongKeyReadCache implements Cache<Long, KeyValueEntry> {
+    // the String of the value and its array, beyond the header of the entry counted by the cache
+    private static final int VALUE_OVERHEAD_BYTES = 24 + 16;
+
+    private final LongKeyCache<KeyValueEntry> cache;
+
+    public LongKeyReadCache(long maxBytes, int shardCount) {
+        this.cache = new LongKeyCache<>(maxBytes, shardCount, entry -> VALUE_OVERHEAD_BYTES + entry.value().length());
+    }
+
+    @Override
+    public KeyValueEntry getIfPresent(Long key) {
+        return cache.getIfPresent(key);
+    }
+
+    @Override
+    public void put(Long key, KeyValueEntry value) {
+        cache.put(key, value);
+    }
+
+    @Override
+    public void putIfAbsent(Long key, KeyValueEntry value) {
+        cache.putIfAbsent(key, value);
+    }
+
+    @Override
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
@@ -0,0 +1,86 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Log file allocated up front and written through a memory mapping, so appends change no file system metadata.
+ * It is either created filled with zeros or a recycled log renamed, whose stale records behind the new ones
+ * fail their checksum on replay. A record not fitting any more grows and remaps the file.
+ */
+public class MappedLogFile implements LogFile {
+    private static final int ZEROS_CHUNK_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int forcedUpTo;
+
+    private MappedLogFile(File file, long size) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    public static MappedLogFile create(File file, long size) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer zeros = ByteBuffer.allocate(ZEROS_CHUNK_SIZE);
+            long position = 0;
+            while (position < size) {
+                zeros.clear().limit((int) Math.min(ZEROS_CHUNK_SIZE, size - position));
+                position += channel.write(zeros, position);
+            }
+            channel.force(true);
+            return new MappedLogFile(file, size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static MappedLogFile recycle(File recycled, File file) {
+        if (!recycled.renameTo(file)) {
+            throw new RuntimeException("Cannot rename " + recycled + " to " + file);
+        }
+        try {
+            return new MappedLogFile(file, file.length());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer[] records) throws IOException {
+        long length = 0;
+        for (ByteBuffer record : records) {
+            length += record.remaining();
+        }
+        if (length > buffer.remaining()) {
+            grow(buffer.position() + length);
+        }
+        for (ByteBuffer record : records) {
+            buffer.put(record);
+        }
+    }
+
+    @Override
+    public void force() {
+        buffer.force(forcedUpTo, buffer.position() - forcedUpTo);
+        forcedUpTo = buffer.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void grow(long minimumSize) throws IOException {
+        int position = buffer.position();
+        long size = Math.max(minimumSize, 2L * buffer.capacity());
+        buffer.force();
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.position(position);
+    }
+}
@@ -0,0 +1,49 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Maps the whole file once; lookups read the mapping in place and slices share its memory.
+ * The mapping is released by the garbage collector, the file itself may be deleted while still mapped.
+ */
+public class MappedSegmentSource implements SegmentSource {
+    private final MappedByteBuffer buffer;
+
+    public MappedSegmentSource(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long size() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long readLong(long position) {
+        return buffer.getLong((int) position);
+    }
+
+    @Override
+    public int readInt(long position) {
+        return buffer.getInt((int) position);
+    }
+
+    @Override
+    public ByteBuffer read(long position, int length) {
+        return buffer.slice((int) position, length);
+    }
+
+    @Override
+    public void close() {
+    }
+}
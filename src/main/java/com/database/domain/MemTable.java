@@ -1,47 +1,40 @@
 package com.database.domain;
 
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Iterator;
 import java.util.Optional;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class MemTable<V> {
-    private TreeMap<Long, V> entries;
-    private int maxSize;
-    private AtomicInteger currentSize;
-
-    public MemTable(int maxSize) {
-        this.entries = new TreeMap<>();
-        this.maxSize = maxSize;
-        this.currentSize = new AtomicInteger(0);
-    }
 
-    public void add(Long key, V value) {
-        if (!entries.containsKey(key)) {
-            currentSize.incrementAndGet();
-        }
-        entries.put(key, value);
-    }
+/**
+ * Sorted in-memory buffer of the latest writes. Implementations accept concurrent writers and never block readers;
+ * iterators are weakly consistent, every key appears once with a value it held while the iteration was running.
+ */
+public interface MemTable {
+    void add(KeyValueEntry entry);
 
-    public Optional<V> get(Long key) {
-        return Optional.ofNullable(entries.get(key));
-    }
+    /**
+     * Returns the entry of the key or null, without allocating on the read path.
+     */
+    KeyValueEntry getIfPresent(Long key);
 
-    public boolean isFull() {
-        return currentSize.get() >= maxSize;
+    default Optional<KeyValueEntry> get(Long key) {
+        return Optional.ofNullable(getIfPresent(key));
     }
 
-    public Set<Entry<Long, V>> getEntries() {
-        return entries.entrySet();
-    }
+    /**
+     * True once the memory taken by the memtable reached its budget.
+     */
+    boolean isFull();
 
-    public Map<Long, V> rangeScan(Long startKey, Long endKey) {
-        return entries.subMap(startKey, true, endKey, true);
-    }
+    int size();
+
+    long sizeBytes();
+
+    Iterator<KeyValueEntry> iterator();
+
+    Iterator<KeyValueEntry> iterator(Long startKey, Long endKey);
 
-    public int size() {
-        return currentSize.get();
+    /**
+     * Releases memory held outside the heap once the memtable is dropped, after its entries were persisted.
+     */
+    default void close() {
     }
-}
\ No newline at end of file
+}
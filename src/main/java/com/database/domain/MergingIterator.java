@@ -0,0 +1,72 @@
+package com.database.domain;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of key-ordered sources. Sources are given newest first; for a key present in many sources
+ * only the entry of the newest one is returned.
+ */
+public class MergingIterator implements Iterator<KeyValueEntry> {
+    private final List<? extends Iterator<KeyValueEntry>> sources;
+    private final PriorityQueue<Head> heads;
+    private final boolean skipTombstones;
+
+    private KeyValueEntry nextEntry;
+
+    public MergingIterator(List<? extends Iterator<KeyValueEntry>> sources, boolean skipTombstones) {
+        this.sources = sources;
+        this.skipTombstones = skipTombstones;
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()));
+        for (int i = 0; i < sources.size(); i++) {
+            advance(i);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (nextEntry == null && !heads.isEmpty()) {
+            Head newest = heads.poll();
+            advance(newest.source);
+            while (!heads.isEmpty() && heads.peek().entry.key().longValue() == newest.entry.key()) {
+                advance(heads.poll().source);
+            }
+            if (!skipTombstones || !isTombstone(newest.entry)) {
+                nextEntry = newest.entry;
+            }
+        }
+        return nextEntry != null;
+    }
+
+    @Override
+    public KeyValueEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        KeyValueEntry entry = nextEntry;
+        nextEntry = null;
+        return entry;
+    }
+
+    static boolean isTombstone(KeyValueEntry entry) {
+        return Objects.equals(entry.value(), KeyValueEntry.EMPTY_VALUE);
+    }
+
+    private void advance(int source) {
+        Iterator<KeyValueEntry> iterator = sources.get(source);
+        if (iterator.hasNext()) {
+            heads.add(new Head(iterator.next(), source));
+        }
+    }
+
+    private record Head(KeyValueEntry entry, int source) implements Comparable<Head> {
+        @Override
+        public int compareTo(Head o) {
+            int byKey = Long.compare(entry.key(), o.entry.key());
+            return byKey != 0 ? byKey : Integer.compare(source, o.source);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.database.domain;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memtable keeping keys and UTF-8 values in chunks of a shared {@link Arena} outside the heap, so its size adds
+ * nothing to the garbage collector's work. The index is a skip list laid out in the same arena:
+ * a node is key | value address | next node address per level, a value is length | bytes.
+ * An address is the chunk number in the high and the offset in the low 32 bits.
+ * <p>
+ * Writers take turns on a lock; links and value addresses are published with release stores, so readers
+ * only follow pointers and never block. An overwrite appends the new value and swings the value address of
+ * the node, the old bytes are reclaimed together with the whole arena when the memtable is closed.
+ * <p>
+ * Closing frees the memory at once rather than whenever the garbage collector gets to it. A reader still
+ * holding the memtable then finds it empty: it is only closed once its entries are in segments.
+ */
+public class OffHeapMemTable implements MemTable {
+    private static final VarHandle LONGS = MethodHandles.memorySegmentViewVarHandle(ValueLayout.JAVA_LONG);
+    private static final int MAX_HEIGHT = 12;
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int NEXT = 16;
+    // the head node sits at address 0 and no node links to it
+    private static final long NIL = 0;
+    private static final long HEAD = 0;
+
+    private final long maxBytes;
+    private final int chunkBytes;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Arena arena = Arena.ofShared();
+
+    private volatile MemorySegment[] chunks = new MemorySegment[0];
+    private volatile int height = 1;
+    private volatile int size;
+    private volatile long reservedBytes;
+
+    private MemorySegment currentChunk;
+    private int currentOffset;
+
+    public OffHeapMemTable(long maxBytes, int chunkBytes) {
+        this.maxBytes = maxBytes;
+        this.chunkBytes = chunkBytes;
+        allocate(NEXT + MAX_HEIGHT * 8);
+    }
+
+    @Override
+    public void add(KeyValueEntry entry) {
+        long key = entry.key();
+        byte[] value = entry.value().getBytes(StandardCharsets.UTF_8);
+        writeLock.lock();
+        try {
+            long[] predecessors = new long[MAX_HEIGHT];
+            long found = seek(key, predecessors);
+            long valueAddress = allocateValue(value);
+            if (found != NIL && key(found) == key) {
+                LONGS.setRelease(chunk(found), offset(found) + VALUE, valueAddress);
+                return;
+            }
+
+            int nodeHeight = randomHeight();
+            for (int level = height; level < nodeHeight; level++) {
+                predecessors[level] = HEAD;
+            }
+            long node = allocate(NEXT + nodeHeight * 8);
+            MemorySegment chunk = chunk(node);
+            long offset = offset(node);
+            chunk.set(ValueLayout.JAVA_LONG, offset + KEY, key);
+            chunk.set(ValueLayout.JAVA_LONG, offset + VALUE, valueAddress);
+            for (int level = 0; level < nodeHeight; level++) {
+                chunk.set(ValueLayout.JAVA_LONG, offset + NEXT + level * 8, next(predecessors[level], level));
+            }
+            for (int level = 0; level < nodeHeight; level++) {
+                LONGS.setRelease(chunk(predecessors[level]), offset(predecessors[level]) + NEXT + level * 8, node);
+            }
+            if (nodeHeight > height) {
+                height = nodeHeight;
+            }
+            size = size + 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public KeyValueEntry getIfPresent(Long key) {
+        try {
+            long node = seek(key, null);
+            if (node == NIL || key(node) != key) {
+                return null;
+            }
+            return entry(node);
+        } catch (IllegalStateException e) {
+            // closed
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        return reservedBytes >= maxBytes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Frees the arena. The writers are done by then, the lock only keeps a late one from racing the close.
+     * Closing fails while a reader is in the middle of an access, so it is retried until none is.
+     */
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            while (arena.scope().isAlive()) {
+                try {
+                    arena.close();
+                } catch (IllegalStateException e) {
+                    Thread.onSpinWait();
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Counts whole chunks, which is what the memtable holds outside the heap.
+     */
+    @Override
+    public long sizeBytes() {
+        return reservedBytes;
+    }
+
+    @Override
+    public Iterator<KeyValueEntry> iterator() {
+        return iterator(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Entries are read one ahead, so an iterator of a memtable closed meanwhile just ends.
+     */
+    @Override
+    public Iterator<KeyValueEntry> iterator(Long startKey, Long endKey) {
+        return new Iterator<>() {
+            private long node = NIL;
+            private KeyValueEntry nextEntry = readFrom(seekOrNil(startKey));
+
+            @Override
+            public boolean hasNext() {
+                return nextEntry != null;
+            }
+
+            @Override
+            public KeyValueEntry next() {
+                if (nextEntry == null) {
+                    throw new NoSuchElementException();
+                }
+                KeyValueEntry entry = nextEntry;
+                nextEntry = readFrom(nextOrNil(node));
+                return entry;
+            }
+
+            private KeyValueEntry readFrom(long candidate) {
+                try {
+                    if (candidate == NIL || key(candidate) > endKey) {
+                        return null;
+                    }
+                    node = candidate;
+                    return entry(candidate);
+                } catch (IllegalStateException e) {
+                    // closed
+                    return null;
+                }
+            }
+        };
+    }
+
+    private long seekOrNil(long key) {
+        try {
+            return seek(key, null);
+        } catch (IllegalStateException e) {
+            return NIL;
+        }
+    }
+
+    private long nextOrNil(long node) {
+        try {
+            return next(node, 0);
+        } catch (IllegalStateException e) {
+            return NIL;
+        }
+    }
+
+    /**
+     * Returns the first node with a key not lower than the given one, filling in the last lower node per level.
+     */
+    private long seek(long key, long[] predecessors) {
+        long node = HEAD;
+        for (int level = height - 1; level >= 0; level--) {
+            long next = next(node, level);
+            while (next != NIL && key(next) < key) {
+                node = next;
+                next = next(node, level);
+            }
+            if (predecessors != null) {
+                predecessors[level] = node;
+            }
+        }
+        return next(node, 0);
+    }
+
+    private KeyValueEntry entry(long node) {
+        long valueAddress = (long) LONGS.getAcquire(chunk(node), offset(node) + VALUE);
+        MemorySegment chunk = chunk(valueAddress);
+        long offset = offset(valueAddress);
+        byte[] bytes = new byte[chunk.get(ValueLayout.JAVA_INT, offset)];
+        MemorySegment.copy(chunk, ValueLayout.JAVA_BYTE, offset + 4, bytes, 0, bytes.length);
+        return new KeyValueEntry(key(node), new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private long key(long node) {
+        return chunk(node).get(ValueLayout.JAVA_LONG, offset(node) + KEY);
+    }
+
+    private long next(long node, int level) {
+        return (long) LONGS.getAcquire(chunk(node), offset(node) + NEXT + level * 8);
+    }
+
+    private long allocateValue(byte[] value) {
+        long address = allocate(4 + value.length);
+        MemorySegment chunk = chunk(address);
+        long offset = offset(address);
+        chunk.set(ValueLayout.JAVA_INT, offset, value.length);
+        MemorySegment.copy(value, 0, chunk, ValueLayout.JAVA_BYTE, offset + 4, value.length);
+        return address;
+    }
+
+    /**
+     * Bump allocation of 8 byte aligned blocks; a block bigger than a chunk gets a chunk of its own.
+     */
+    private long allocate(int bytes) {
+        int aligned = (bytes + 7) & ~7;
+        if (currentChunk == null || currentChunk.byteSize() - currentOffset < aligned) {
+            currentChunk = arena.allocate(Math.max(chunkBytes, aligned), 8);
+            currentOffset = 0;
+            reservedBytes = reservedBytes + currentChunk.byteSize();
+            MemorySegment[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = currentChunk;
+            chunks = grown;
+        }
+        long address = ((long) (chunks.length - 1) << 32) | currentOffset;
+        currentOffset += aligned;
+        return address;
+    }
+
+    private MemorySegment chunk(long address) {
+        return chunks[(int) (address >>> 32)];
+    }
+
+    private static int offset(long address) {
+        return (int) address;
+    }
+
+    private static int randomHeight() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int height = 1;
+        while (height < MAX_HEIGHT && random.nextInt(4) == 0) {
+            height++;
+        }
+        return height;
+    }
+}
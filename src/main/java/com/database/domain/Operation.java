@@ -1,15 +1,52 @@
 package com.database.domain;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
 
+/**
+ * Binary layout: type | entry count | (key, value length, UTF-8 value bytes) per entry.
+ * The text form is the format of the logs written before, only read back on replay.
+ */
 public record Operation(PersistableOperationType type, List<KeyValueEntry> entries) {
 
     public Operation(PersistableOperationType type, KeyValueEntry entry) {
         this(type, List.of(entry));
     }
 
+    public byte[] toBytes() {
+        byte[][] values = new byte[entries.size()][];
+        int size = 1 + 4;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = entries.get(i).value().getBytes(StandardCharsets.UTF_8);
+            size += 8 + 4 + values[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(type.code());
+        buffer.putInt(values.length);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putLong(entries.get(i).key());
+            buffer.putInt(values[i].length);
+            buffer.put(values[i]);
+        }
+        return buffer.array();
+    }
+
+    public static Operation fromBytes(ByteBuffer buffer) {
+        PersistableOperationType type = PersistableOperationType.fromCode(buffer.get());
+        int count = buffer.getInt();
+        List<KeyValueEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long key = buffer.getLong();
+            int length = buffer.getInt();
+            entries.add(new KeyValueEntry(key, SegmentSource.decode(buffer, buffer.position(), length)));
+            buffer.position(buffer.position() + length);
+        }
+        return new Operation(type, entries);
+    }
+
     public static Operation deserialize(String serialized) {
         String[] splitted = serialized.split("\\|");
         List<KeyValueEntry> entries = Arrays.stream(splitted[1]
@@ -27,11 +64,4 @@ public record Operation(PersistableOperationType type, List<KeyValueEntry> entri
                 entries
         );
     }
-
-    public String serialize() {
-        return type.name() + "|" +
-                entries.stream()
-                        .map(KeyValueEntry::serialize)
-                        .collect(Collectors.joining(","));
-    }
 }
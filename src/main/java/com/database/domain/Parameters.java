@@ -3,6 +3,16 @@ package com.database.domain;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.database.domain.heuristic.Cache;
+import com.database.domain.heuristic.LRUCache;
+import com.database.domain.heuristic.LongKeyCache;
+import com.database.domain.heuristic.ShardedCache;
+import com.database.domain.heuristic.WTinyLfuCache;
+import com.database.domain.heuristic.Weigher;
 
 public class Parameters {
     public static String maxLogOperationLength(String string) {
@@ -11,12 +21,68 @@ public class Parameters {
                 : string;
     }
 
-    public static final int NUM_OF_THREADS_FOR_REPLICA_MESSAGES = 20;
-    public static final int NUM_OF_THREADS_FOR_LEADER_MESSAGES = 10;
+    public static final ServerMode SERVER_MODE = ServerMode.THREAD_PER_CONNECTION;
+    public static final ThreadMode THREAD_MODE = ThreadMode.PLATFORM;
+    // in THREAD_PER_CONNECTION mode a connection keeps its thread until it is closed
+    public static final int MAX_CLIENT_CONNECTIONS = 512;
+    public static final int MAX_SYNC_CONNECTIONS = 16;
+    public static final int EVENT_LOOP_THREADS = 2;
+    public static final int EVENT_LOOP_MAX_CONNECTIONS = 50_000;
+    // run the commands of event loop connections and the pipelined commands of binary connections
+    public static final int COMMAND_THREADS = 16;
+    // per binary connection in both server modes; reading from a connection pauses while it has that many commands
+    // running, or in the event loop mode queued
+    public static final int MAX_IN_FLIGHT_COMMANDS = 64;
     public static final int NUM_OF_THREADS_FOR_RECEIVING_MESSAGES = 5;
+    // the leader sends heartbeats more often, so its connections to the replicas stay open
+    public static final int CLIENT_IDLE_TIMEOUT_MILLIS = 60_000;
+    // a pipelined request without a response by then fails, the connection stays open for the others
+    public static final long REQUEST_TIMEOUT_MILLIS = 30_000;
+
+    public static final long MEM_TABLE_MAX_BYTES = 8L * 1024 * 1024;
+    public static final int MAX_IMMUTABLE_MEM_TABLES = 4;
+    public static final int MEM_TABLE_SLOWDOWN_TRIGGER = 3;
+    // a failed flush is retried, later flushes wait for it so no log is removed before its memtable is on disk
+    public static final long FLUSH_RETRY_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long FLUSH_RETRY_MAX_BACKOFF_MILLIS = 10_000;
+    public static final long DELAYED_WRITE_BYTES_PER_SECOND = 16L * 1024 * 1024;
+    public static final MemTableType MEM_TABLE_TYPE = MemTableType.SKIP_LIST;
+    public static final int OFF_HEAP_MEM_TABLE_CHUNK_BYTES = 1024 * 1024;
+    public static final long READ_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+    // boxed key, entry, String and the map and list nodes of a cached value in an object cache
+    public static final int READ_CACHE_ENTRY_OVERHEAD_BYTES = 160;
+    // power of two
+    public static final int READ_CACHE_SHARDS = 16;
+    public static final ReadCachePolicy READ_CACHE_POLICY = ReadCachePolicy.LRU;
+    // power of two
+    public static final int WRITE_LOCK_STRIPES = 64;
+
+    public static final WriteAheadLogWriter.DurabilityMode WAL_DURABILITY_MODE =
+            WriteAheadLogWriter.DurabilityMode.OS_BUFFERED;
+    public static final long WAL_GROUP_COMMIT_INTERVAL_MICROS = 500;
+    public static final WriteAheadLog.FileMode WAL_FILE_MODE = WriteAheadLog.FileMode.APPEND;
+    public static final long WAL_PREALLOCATED_FILE_BYTES = 2 * MEM_TABLE_MAX_BYTES;
+    public static final int WAL_RECYCLED_FILES = 4;
+
+    public static final SegmentSource.ReadMode SEGMENT_READ_MODE = SegmentSource.ReadMode.MEMORY_MAPPED;
+    // only segments read through file channels use the block cache, mapped ones rely on the page cache
+    public static final long BLOCK_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    public static final int BLOCK_CACHE_BLOCK_BYTES = 4096;
+    // power of two
+    public static final int BLOCK_CACHE_SHARDS = 16;
 
-    public static final int DEFAULT_MEM_TABLE_MAX_SIZE = 10_000;
-    public static final int LRU_CACHE_SIZE = 10_000;
+    public static final int BLOOM_FILTER_BITS_PER_KEY = 10;
+
+    public static final int LEVEL_0_COMPACTION_TRIGGER = 4;
+    public static final long LEVEL_1_MAX_BYTES = 16L * 1024 * 1024;
+    public static final int LEVEL_SIZE_MULTIPLIER = 10;
+    public static final long TARGET_SEGMENT_BYTES = 4L * 1024 * 1024;
+    public static final int SIZE_TIERED_MIN_THRESHOLD = 4;
+    public static final int SIZE_TIERED_MAX_THRESHOLD = 32;
+    public static final double SIZE_TIERED_BUCKET_LOW = 0.5;
+    public static final double SIZE_TIERED_BUCKET_HIGH = 1.5;
+    public static final long SIZE_TIERED_MIN_RUN_BYTES = 1024 * 1024;
+    public static final CompactionStyle COMPACTION_STYLE = CompactionStyle.LEVELED;
 
     public static final int MAX_MISSING_HEARTBEATS_TO_START_ELECTION = 3;
     public static final int MAX_MISSING_ATTEMPTS_TO_START_RE_ELECTION = 3 * MAX_MISSING_HEARTBEATS_TO_START_ELECTION;
@@ -26,7 +92,99 @@ public class Parameters {
         return Executors.newScheduledThreadPool(replicaNodes);
     }
 
+    /**
+     * With a thread per connection, starts threads up to the limit and rejects connections beyond it.
+     * With event loops, runs the commands of all connections. Virtual threads are not pooled nor limited.
+     */
+    public static ExecutorService executorServiceForConnections(int maxConnections) {
+        if (THREAD_MODE == ThreadMode.VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return switch (SERVER_MODE) {
+            case THREAD_PER_CONNECTION ->
+                    new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+            case EVENT_LOOP -> executorServiceForCommands();
+        };
+    }
+
+    public static ExecutorService executorServiceForCommands() {
+        if (THREAD_MODE == ThreadMode.VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newFixedThreadPool(COMMAND_THREADS);
+    }
+
     public static ExecutorService executorServiceForReceivingMessages() {
+        if (THREAD_MODE == ThreadMode.VIRTUAL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
         return Executors.newFixedThreadPool(NUM_OF_THREADS_FOR_RECEIVING_MESSAGES);
     }
+
+    public static WriteController writeController() {
+        return new WriteController(MAX_IMMUTABLE_MEM_TABLES, MEM_TABLE_SLOWDOWN_TRIGGER, DELAYED_WRITE_BYTES_PER_SECOND);
+    }
+
+    public static CompactionPolicy compactionPolicy() {
+        return switch (COMPACTION_STYLE) {
+            case LEVELED -> new LeveledCompactionPolicy(LEVEL_0_COMPACTION_TRIGGER, LEVEL_1_MAX_BYTES,
+                    LEVEL_SIZE_MULTIPLIER, TARGET_SEGMENT_BYTES);
+            case SIZE_TIERED -> new SizeTieredCompactionPolicy(SIZE_TIERED_MIN_THRESHOLD, SIZE_TIERED_MAX_THRESHOLD,
+                    SIZE_TIERED_BUCKET_LOW, SIZE_TIERED_BUCKET_HIGH, SIZE_TIERED_MIN_RUN_BYTES, TARGET_SEGMENT_BYTES);
+        };
+    }
+
+    public static Cache<Long, KeyValueEntry> readCache() {
+        return switch (READ_CACHE_POLICY) {
+            case LRU -> new ShardedCache<>(READ_CACHE_MAX_BYTES, READ_CACHE_SHARDS,
+                    shardBytes -> new LRUCache<>(shardBytes, readCacheWeigher()));
+            case W_TINY_LFU -> new ShardedCache<>(READ_CACHE_MAX_BYTES, READ_CACHE_SHARDS,
+                    shardBytes -> new WTinyLfuCache<>(shardBytes, readCacheWeigher()));
+            case LONG_KEY_CLOCK -> new LongKeyReadCache(READ_CACHE_MAX_BYTES, READ_CACHE_SHARDS);
+        };
+    }
+
+    public static Weigher<Long, KeyValueEntry> readCacheWeigher() {
+        return (key, entry) -> READ_CACHE_ENTRY_OVERHEAD_BYTES + entry.value().length();
+    }
+
+    public static LongKeyCache<byte[]> blockCache() {
+        return new LongKeyCache<>(BLOCK_CACHE_MAX_BYTES, BLOCK_CACHE_SHARDS, block -> block.length);
+    }
+
+    public static MemTable memTable() {
+        return switch (MEM_TABLE_TYPE) {
+            case SKIP_LIST -> new SkipListMemTable(MEM_TABLE_MAX_BYTES);
+            case OFF_HEAP -> new OffHeapMemTable(MEM_TABLE_MAX_BYTES, OFF_HEAP_MEM_TABLE_CHUNK_BYTES);
+        };
+    }
+
+    public enum ServerMode {
+        THREAD_PER_CONNECTION,
+        // non-blocking connections multiplexed by a few selector threads
+        EVENT_LOOP
+    }
+
+    public enum ThreadMode {
+        PLATFORM,
+        // a virtual thread per connection, or per command with event loops; blocking code stays as it is
+        VIRTUAL
+    }
+
+    public enum MemTableType {
+        SKIP_LIST,
+        OFF_HEAP
+    }
+
+    public enum ReadCachePolicy {
+        LRU,
+        W_TINY_LFU,
+        // primitive arrays and value bytes, no per entry objects
+        LONG_KEY_CLOCK
+    }
+
+    public enum CompactionStyle {
+        LEVELED,
+        SIZE_TIERED
+    }
 }
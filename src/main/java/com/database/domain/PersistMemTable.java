@@ -6,14 +6,16 @@ import java.util.logging.Logger;
 public class PersistMemTable implements Runnable {
     private static final Logger LOGGER = Logger.getLogger(PersistMemTable.class.getName());
 
-    private final MemTable<KeyValueEntry> memTable;
+    private final MemTable memTable;
+    private final long logVersion;
     private final PersistentStorage persistentStorage;
 
-    public PersistMemTable(MemTable<KeyValueEntry> memTable,
+    public PersistMemTable(MemTable memTable, long logVersion,
             PersistentStorage persistentStorage
     ) {
         this.persistentStorage = persistentStorage;
         this.memTable = memTable;
+        this.logVersion = logVersion;
     }
 
     @Override
@@ -23,6 +25,6 @@ public class PersistMemTable implements Runnable {
     }
 
     private void persistMemTables() {
-        persistentStorage.update(memTable.getEntries());
+        persistentStorage.flush(memTable.iterator(), logVersion);
     }
 }
@@ -1,7 +1,26 @@
 package com.database.domain;
 
 public enum PersistableOperationType {
-    PUT,
-    DEL,
-    BATCH_PUT
+    PUT(1),
+    DEL(2),
+    BATCH_PUT(3);
+
+    private final byte code;
+
+    PersistableOperationType(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    public static PersistableOperationType fromCode(byte code) {
+        for (PersistableOperationType type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation type " + code);
+    }
 }
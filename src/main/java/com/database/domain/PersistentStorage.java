@@ -1,228 +1,396 @@
 package com.database.domain;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.database.domain.heuristic.CacheStats;
+import com.database.domain.heuristic.LongKeyCache;
 
 public class PersistentStorage {
     private static final Logger LOGGER = Logger.getLogger(PersistentStorage.class.getName());
 
-    public static final int MAX_CHARS_TO_COMPUTE_INDEX = 1;
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("^segment_(\\d+)\\.bin$");
+    private static final Pattern LEGACY_BUCKET_PATTERN = Pattern.compile("^data_[0-9a-f]+\\.bin$");
+    private static final Pattern TMP_PATTERN = Pattern.compile("^.*_tmp\\.bin$");
+
+    static final Comparator<Segment> READ_ORDER = Comparator.comparingInt(Segment::level)
+            .thenComparing(Comparator.comparingLong(Segment::sequence).reversed())
+            .thenComparingLong(Segment::minKey);
+
     private final File storeDirectory;
-    private final DigestUtil digestUtil;
+    private final SegmentSource.ReadMode readMode;
+    // shared by the segments read through file channels, null for memory mapped ones
+    private final LongKeyCache<byte[]> blockCache;
+    private final long maxSegmentBytes;
+    private final SegmentManifest manifest;
+    private final CompactionStats compactionStats = new CompactionStats();
+    private final AtomicLong nextSegmentId;
+    private final ReentrantLock segmentsLock = new ReentrantLock();
+
+    private volatile List<Segment> segments;
+    private volatile long logCheckpoint;
 
     public PersistentStorage(String directory) {
+        this(directory, Parameters.SEGMENT_READ_MODE, Parameters.TARGET_SEGMENT_BYTES);
+    }
+
+    public PersistentStorage(String directory, SegmentSource.ReadMode readMode, long maxSegmentBytes) {
+        this.readMode = readMode;
+        this.blockCache = readMode == SegmentSource.ReadMode.FILE_CHANNEL ? Parameters.blockCache() : null;
+        this.maxSegmentBytes = maxSegmentBytes;
         storeDirectory = new File(directory + "/STORE");
         if (!storeDirectory.exists() || !storeDirectory.isDirectory())
             storeDirectory.mkdirs();
+
+        this.manifest = new SegmentManifest(storeDirectory);
+        removeTmpFiles();
+        this.segments = loadSegments();
+        this.nextSegmentId = new AtomicLong(
+                Math.max(maxSegmentIdOnDisk(), segments.stream().mapToLong(Segment::id).max().orElse(0)) + 1);
+        removeOrphanedSegments();
+        migrateLegacyBucketFiles();
+    }
+
+    /**
+     * Writes the entries as a new sorted run of level 0. The run is split into segments covering contiguous
+     * key ranges of at most {@code maxSegmentBytes} each, which share the same sequence. The segments and the
+     * new log checkpoint are published together. A failed flush leaves no files behind and can be retried.
+     */
+    public void flush(Iterator<KeyValueEntry> sortedEntries, long logVersion) {
+        long sequence = nextSegmentId.getAndIncrement();
+        List<Segment> flushed = writeSegments(sortedEntries, 0, sequence, maxSegmentBytes);
         try {
-            this.digestUtil = new DigestUtil(MessageDigest.getInstance("SHA-256"));
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            replaceSegments(Collections.emptyList(), flushed, logVersion);
+        } catch (RuntimeException e) {
+            releaseSegments(flushed);
+            throw e;
         }
+        compactionStats.recordFlush(flushed.stream().mapToLong(Segment::sizeBytes).sum());
     }
 
-    public void update(Set<Entry<Long, KeyValueEntry>> entriesToSaveOrUpdate) {
-        Map<String, List<Entry<Long, KeyValueEntry>>> entriesByDifferentiator = entriesToSaveOrUpdate.stream()
-                .collect(Collectors.groupingBy(this::getFileDifferentiator));
-
-        for (Entry<String, List<Entry<Long, KeyValueEntry>>> entry : entriesByDifferentiator.entrySet()) {
-            try {
-                String fileDifferentiator = entry.getKey();
-
-                File file = getFile(storeDirectory, fileDifferentiator);
-                File tmpFile = getTmpFile(storeDirectory, fileDifferentiator);
-                List<KeyValueEntry> exisingData = file.exists()
-                        ? Index.readFromFile(file)
-                        : Collections.emptyList();
+    /**
+     * The highest write-ahead log version whose operations are all persisted.
+     */
+    public long logCheckpoint() {
+        return logCheckpoint;
+    }
 
-                List<KeyValueEntry> newData = entry.getValue().stream()
-                        .map(Entry::getValue)
-                        .toList();
+    /**
+     * Merges the inputs in a single streaming pass. Shadowed values are always dropped, tombstones only when
+     * no segment outside the compaction, older than its output, may still hold the deleted keys.
+     */
+    public void compact(Compaction compaction) {
+        List<Segment> inputs = compaction.inputs().stream()
+                .sorted(READ_ORDER)
+                .toList();
+        long outputSequence = inputs.stream().mapToLong(Segment::sequence).max().getAsLong();
+        boolean dropTombstones = canDropTombstones(inputs, compaction.outputLevel(), outputSequence);
+
+        List<SegmentIterator> iterators = inputs.stream()
+                .map(Segment::iterator)
+                .toList();
+        List<Segment> outputs = writeSegments(new MergingIterator(iterators, dropTombstones),
+                compaction.outputLevel(), outputSequence, compaction.maxOutputSegmentBytes());
+
+        replaceSegments(inputs, outputs);
+        compactionStats.recordCompaction(
+                inputs.stream().mapToLong(Segment::sizeBytes).sum(),
+                outputs.stream().mapToLong(Segment::sizeBytes).sum()
+        );
+    }
 
-                List<KeyValueEntry> mergedData =
-                        ListMerger.mergeListsPrioritizingNewData(exisingData, newData)
-                                .stream()
-                                .filter(e -> !Objects.equals(e.value(), KeyValueEntry.EMPTY_VALUE))
-                                .sorted()
-                                .toList();
+    public Optional<KeyValueEntry> read(Long key) {
+        return Optional.ofNullable(readIfPresent(key));
+    }
 
-                writeFile(tmpFile, mergedData);
-                tmpFile.renameTo(file);
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "Error: " + e.getMessage());
-                throw new RuntimeException(e);
+    /**
+     * Returns the newest stored entry of the key, a tombstone included, or null.
+     */
+    public KeyValueEntry readIfPresent(Long key) {
+        List<Segment> acquired = acquireSegments();
+        try {
+            for (Segment segment : acquired) {
+                KeyValueEntry entry = segment.get(key);
+                if (entry != null) {
+                    return entry;
+                }
             }
+            return null;
+        } finally {
+            releaseSegments(acquired);
         }
     }
 
-    public Optional<KeyValueEntry> read(Long key) {
-        List<KeyValueEntry> entries = readMany(List.of(key));
-        if (entries.isEmpty()) {
-            return Optional.empty();
+    /**
+     * Streams stored entries (tombstones included) with keys in [from, to], in ascending key order.
+     * Only segments whose key range overlaps the requested one are read, each of them sequentially.
+     * The segments stay readable until the iterator is closed.
+     */
+    public RangeIterator scan(long from, long to) {
+        List<Segment> acquired = acquireSegments();
+        List<SegmentIterator> iterators = new ArrayList<>();
+        for (Segment segment : acquired) {
+            if (segment.overlaps(from, to)) {
+                iterators.add(segment.iterator(from, to));
+            }
         }
-        return Optional.ofNullable(entries.get(0));
+        return new RangeIterator(new MergingIterator(iterators, false), () -> releaseSegments(acquired));
     }
 
-    public List<KeyValueEntry> readMany(List<Long> keys) {
-        Map<String, List<Long>> keysSplittedToFiles = keys.stream()
-                .collect(Collectors.<Long, String>groupingBy(this::getFileDifferentiator));
+    /**
+     * Empty if segments are memory mapped and bypass the block cache.
+     */
+    public Optional<CacheStats> blockCacheStats() {
+        return Optional.ofNullable(blockCache).map(LongKeyCache::stats);
+    }
 
-        List<KeyValueEntry> entries = new ArrayList<>();
+    public List<Segment> segments() {
+        return segments;
+    }
 
-        for (Map.Entry<String, List<Long>> entry : keysSplittedToFiles.entrySet()) {
-            File file = getFile(storeDirectory, entry.getKey());
-            if (!file.exists()) {
-                continue;
+    public CompactionStats compactionStats() {
+        return compactionStats;
+    }
+
+    private boolean canDropTombstones(List<Segment> inputs, int outputLevel, long outputSequence) {
+        long minKey = inputs.stream().mapToLong(Segment::minKey).min().getAsLong();
+        long maxKey = inputs.stream().mapToLong(Segment::maxKey).max().getAsLong();
+        Set<Segment> inputSet = new HashSet<>(inputs);
+        for (Segment segment : segments) {
+            boolean older = segment.level() > outputLevel
+                    || (segment.level() == outputLevel && segment.sequence() < outputSequence);
+            if (older && !inputSet.contains(segment) && segment.overlaps(minKey, maxKey)) {
+                return false;
             }
-            Long fromKey = entry.getValue().getFirst();
-            Long toKey = entry.getValue().getLast();
-            entries.addAll(Index.readFromFile(file, fromKey, toKey));
         }
-        return entries;
+        return true;
     }
 
-    private String getFileDifferentiator(Entry<Long, KeyValueEntry> entry) {
-        return getFileDifferentiator(entry.getKey());
+    private List<Segment> acquireSegments() {
+        while (true) {
+            List<Segment> current = segments;
+            int retained = 0;
+            while (retained < current.size() && current.get(retained).retain()) {
+                retained++;
+            }
+            if (retained == current.size()) {
+                return current;
+            }
+            releaseSegments(current.subList(0, retained));
+        }
     }
 
-    private static File getFile(File storeDirectory, String fileDifferentiator) {
-        return new File(storeDirectory.getAbsolutePath() + "/" + getFileName(fileDifferentiator));
+    private static void releaseSegments(List<Segment> acquired) {
+        acquired.forEach(Segment::release);
     }
 
-    private static File getTmpFile(File storeDirectory, String fileDifferentiator) {
-        return new File(storeDirectory.getAbsolutePath() + "/" + getTmpFileName(fileDifferentiator));
+    private void replaceSegments(List<Segment> removed, List<Segment> added) {
+        replaceSegments(removed, added, 0);
     }
 
-    private String getFileDifferentiator(Long key) {
-        String keyValue = String.valueOf(key);
-        if (keyValue.length() > MAX_CHARS_TO_COMPUTE_INDEX) {
-            return digestUtil.getHashAsString(keyValue.substring(0, MAX_CHARS_TO_COMPUTE_INDEX));
+    private void replaceSegments(List<Segment> removed, List<Segment> added, long logVersion) {
+        // a lock rather than a monitor: the manifest is written while holding it
+        segmentsLock.lock();
+        try {
+            long newLogCheckpoint = Math.max(logCheckpoint, logVersion);
+            Set<Segment> removedSet = new HashSet<>(removed);
+            List<Segment> newSegments = new ArrayList<>(segments.size() + added.size());
+            for (Segment segment : segments) {
+                if (!removedSet.contains(segment)) {
+                    newSegments.add(segment);
+                }
+            }
+            newSegments.addAll(added);
+            newSegments.sort(READ_ORDER);
+
+            manifest.save(newSegments, newLogCheckpoint);
+            segments = List.copyOf(newSegments);
+            logCheckpoint = newLogCheckpoint;
+            releaseSegments(removed);
+        } finally {
+            segmentsLock.unlock();
         }
-        return digestUtil.getHashAsString(keyValue);
     }
 
-    private static String getFileName(String fileDifferentiator) {
-        return "data_" + fileDifferentiator + ".bin";
+    private List<Segment> writeSegments(Iterator<KeyValueEntry> sortedEntries, int level, long sequence,
+            long maxSegmentBytes
+    ) {
+        List<Segment> written = new ArrayList<>();
+        SegmentWriter writer = null;
+        long segmentId = 0;
+        try {
+            while (sortedEntries.hasNext()) {
+                if (writer == null) {
+                    segmentId = nextSegmentId.getAndIncrement();
+                    writer = new SegmentWriter(getTmpFile(storeDirectory, segmentId));
+                }
+                writer.append(sortedEntries.next());
+                if (writer.bytesWritten() >= maxSegmentBytes) {
+                    written.add(finishSegment(writer, segmentId, level, sequence));
+                    writer = null;
+                }
+            }
+            if (writer != null) {
+                written.add(finishSegment(writer, segmentId, level, sequence));
+                writer = null;
+            }
+        } catch (RuntimeException e) {
+            // unpublished, so releasing deletes the files
+            if (writer != null) {
+                writer.abort();
+            }
+            releaseSegments(written);
+            throw e;
+        }
+        return written;
     }
 
-    private static String getTmpFileName(String fileDifferentiator) {
-        return "data_" + fileDifferentiator + "_tmp.bin";
+    private Segment finishSegment(SegmentWriter writer, long segmentId, int level, long sequence) {
+        writer.close();
+        File file = getFile(storeDirectory, segmentId);
+        if (!writer.file().renameTo(file)) {
+            throw new RuntimeException("Cannot rename " + writer.file() + " to " + file);
+        }
+        try {
+            return Segment.open(file, segmentId, level, sequence, readMode, blockCache);
+        } catch (RuntimeException e) {
+            file.delete();
+            throw e;
+        }
     }
 
-    private static void writeFile(File file, List<KeyValueEntry> entries) {
-        if (!file.exists()) {
-            try {
-                file.createNewFile();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private List<Segment> loadSegments() {
+        List<Segment> loaded = new ArrayList<>();
+        if (manifest.exists()) {
+            SegmentManifest.Contents contents = manifest.load();
+            logCheckpoint = contents.logCheckpoint();
+            for (SegmentManifest.Entry entry : contents.segments()) {
+                loaded.add(Segment.open(getFile(storeDirectory, entry.segmentId()), entry.segmentId(),
+                        entry.level(), entry.sequence(), readMode, blockCache));
             }
-        }
-        try (FileOutputStream fos = new FileOutputStream(file);
-                BufferedOutputStream bos = new BufferedOutputStream(fos);
-                FileChannel channel = fos.getChannel()) {
-            Index index = new Index(entries);
-            index.saveIndex(channel);
-            for (KeyValueEntry entry : entries) {
-                bos.write(entry.value().getBytes(StandardCharsets.UTF_8));
+        } else {
+            // segments flushed before the manifest was introduced all belong to level 0
+            for (Map.Entry<Long, File> entry : segmentFilesOnDisk().entrySet()) {
+                loaded.add(Segment.open(entry.getValue(), entry.getKey(), 0, entry.getKey(), readMode, blockCache));
             }
-            bos.flush();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            manifest.save(loaded, logCheckpoint);
         }
+        loaded.sort(READ_ORDER);
+        return List.copyOf(loaded);
     }
 
-    record Index(List<KeyValueEntry> entries) {
-
-        public void saveIndex(FileChannel channel) {
-            try {
-                channel.write(ByteBuffer.allocate(4).putInt(entries.size()).flip());
-                int startPositionOffset = entries.size() * 16 + 4;
-                int endPositionOffset = startPositionOffset;
-
-                for (KeyValueEntry entry : entries) {
-                    endPositionOffset += entry.value().getBytes(StandardCharsets.UTF_8).length;
+    private Map<Long, File> segmentFilesOnDisk() {
+        File[] files = storeDirectory.listFiles((dir, name) -> SEGMENT_PATTERN.matcher(name).matches());
+        Map<Long, File> segmentFiles = new HashMap<>();
+        for (File file : files) {
+            Matcher matcher = SEGMENT_PATTERN.matcher(file.getName());
+            if (matcher.matches()) {
+                segmentFiles.put(Long.parseLong(matcher.group(1)), file);
+            }
+        }
+        return segmentFiles;
+    }
 
-                    channel.write(ByteBuffer.allocate(8).putLong(entry.key()).flip());
-                    channel.write(ByteBuffer.allocate(4).putInt(startPositionOffset).flip());
-                    channel.write(ByteBuffer.allocate(4).putInt(endPositionOffset).flip());
+    private long maxSegmentIdOnDisk() {
+        return segmentFilesOnDisk().keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+    }
 
-                    startPositionOffset += entry.value().getBytes(StandardCharsets.UTF_8).length;
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private void removeOrphanedSegments() {
+        Set<Long> liveSegmentIds = new HashSet<>();
+        segments.forEach(segment -> liveSegmentIds.add(segment.id()));
+        for (Map.Entry<Long, File> entry : segmentFilesOnDisk().entrySet()) {
+            if (!liveSegmentIds.contains(entry.getKey())) {
+                LOGGER.log(Level.INFO, "Removing segment not listed in manifest: " + entry.getValue());
+                entry.getValue().delete();
             }
         }
+    }
 
-        public static List<KeyValueEntry> readFromFile(File file) {
-            return readFromFile(file, 0L, Long.MAX_VALUE);
+    private void removeTmpFiles() {
+        File[] files = storeDirectory.listFiles((dir, name) -> TMP_PATTERN.matcher(name).matches());
+        for (File file : files) {
+            file.delete();
         }
+    }
 
-        public static List<KeyValueEntry> readFromFile(File file, Long fromKey, Long toKey) {
-            List<KeyValueEntry> entries = new ArrayList<>();
-            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                raf.seek(0);
-                int numOfEntries = raf.readInt();
+    /**
+     * Hash bucket files written by the previous rewrite-in-place layout are sorted and hold disjoint keys,
+     * so each one is converted into a segment older than anything flushed afterwards.
+     */
+    private void migrateLegacyBucketFiles() {
+        File[] files = storeDirectory.listFiles((dir, name) -> LEGACY_BUCKET_PATTERN.matcher(name).matches());
+        if (files.length == 0) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Migrating " + files.length + " legacy bucket files to segments");
+        List<Segment> migrated = new ArrayList<>();
+        for (File legacyFile : files) {
+            long segmentId = nextSegmentId.getAndIncrement();
+            SegmentWriter writer = new SegmentWriter(getTmpFile(storeDirectory, segmentId));
+            readLegacyBucketFile(legacyFile).forEach(writer::append);
+            migrated.add(finishSegment(writer, segmentId, 0, 0));
+        }
+        replaceSegments(Collections.emptyList(), migrated);
+        for (File legacyFile : files) {
+            legacyFile.delete();
+        }
+    }
 
-                List<IndexEntry> indexEntries = new ArrayList<>();
-                for (int i = 0; i < numOfEntries; i++) {
-                    long keyBytes = raf.readLong();
-                    int dataStartOffset = raf.readInt();
-                    int dataEndOffset = raf.readInt();
-                    indexEntries.add(new IndexEntry(keyBytes, dataStartOffset, dataEndOffset));
-                }
-                int fromIndex = Collections.binarySearch(indexEntries, new IndexEntry(fromKey, null, null),
-                        Comparator.comparing(IndexEntry::key)
-                );
-                int toIndex = Collections.binarySearch(indexEntries, new IndexEntry(toKey, null, null),
-                        Comparator.comparing(IndexEntry::key)
-                );
-                if (fromIndex < 0 && fromKey != 0) {
-                    return Collections.emptyList();
-                }
-                if (fromKey == 0) {
-                    fromIndex = 0;
-                }
-                if (toIndex < 0) {
-                    toIndex = indexEntries.size() - 1;
-                }
-                List<IndexEntry> entriesToFetches = indexEntries.subList(fromIndex, toIndex + 1);
-
-                for (IndexEntry entryToFetch : entriesToFetches) {
-                    int dataLength = entryToFetch.end() - entryToFetch.start();
-                    byte[] bytes = new byte[dataLength];
-                    raf.seek(entryToFetch.start());
-                    raf.read(bytes, 0, dataLength);
-                    String data = new String(bytes);
-                    entries.add(new KeyValueEntry(Long.valueOf(entryToFetch.key()), data));
-                }
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+    private static List<KeyValueEntry> readLegacyBucketFile(File file) {
+        List<KeyValueEntry> entries = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            int numOfEntries = raf.readInt();
+            long[] keys = new long[numOfEntries];
+            int[] starts = new int[numOfEntries];
+            int[] ends = new int[numOfEntries];
+            for (int i = 0; i < numOfEntries; i++) {
+                keys[i] = raf.readLong();
+                starts[i] = raf.readInt();
+                ends[i] = raf.readInt();
             }
-            return entries;
+            for (int i = 0; i < numOfEntries; i++) {
+                byte[] bytes = new byte[ends[i] - starts[i]];
+                raf.seek(starts[i]);
+                raf.readFully(bytes);
+                entries.add(new KeyValueEntry(keys[i], new String(bytes, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+        return entries;
+    }
 
+    private static File getFile(File storeDirectory, long segmentId) {
+        return new File(storeDirectory.getAbsolutePath() + "/" + getFileName(segmentId));
     }
 
-    record IndexEntry(long key, Integer start, Integer end) {}
+    private static File getTmpFile(File storeDirectory, long segmentId) {
+        return new File(storeDirectory.getAbsolutePath() + "/" + getTmpFileName(segmentId));
+    }
+
+    private static String getFileName(long segmentId) {
+        return "segment_" + segmentId + ".bin";
+    }
 
+    private static String getTmpFileName(long segmentId) {
+        return "segment_" + segmentId + "_tmp.bin";
+    }
 }
@@ -0,0 +1,35 @@
+package com.database.domain;
+
+import java.util.Iterator;
+
+/**
+ * Lazily yields entries in ascending key order; closing it releases the segments it reads.
+ */
+public class RangeIterator implements Iterator<KeyValueEntry>, AutoCloseable {
+    private final Iterator<KeyValueEntry> entries;
+    private final Runnable onClose;
+    private boolean closed;
+
+    RangeIterator(Iterator<KeyValueEntry> entries, Runnable onClose) {
+        this.entries = entries;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return entries.hasNext();
+    }
+
+    @Override
+    public KeyValueEntry next() {
+        return entries.next();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            onClose.run();
+        }
+    }
+}
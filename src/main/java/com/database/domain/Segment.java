@@ -0,0 +1,222 @@
+package com.database.domain;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.database.domain.heuristic.BloomFilter;
+import com.database.domain.heuristic.LongKeyCache;
+
+/**
+ * Immutable, sorted data file. Layout:
+ * values | index (key, start, end) per entry | bloom filter |
+ * trailer (index offset, entry count, min key, max key, bloom filter offset, bloom filter length, magic).
+ * <p>
+ * Level and sequence are kept in the manifest: reads consult level 0 from the highest sequence
+ * to the lowest and then the deeper levels, whose segments never overlap within a level.
+ */
+public class Segment {
+    private static final Logger LOGGER = Logger.getLogger(Segment.class.getName());
+
+    static final int MAGIC = 0x5E65_0002;
+    static final int INDEX_ENTRY_SIZE = 16;
+    static final int TRAILER_SIZE = 36;
+
+    private final File file;
+    private final SegmentSource source;
+    private final long id;
+    private final int level;
+    private final long sequence;
+    private final long sizeBytes;
+    private final int indexOffset;
+    private final int entryCount;
+    private final long minKey;
+    private final long maxKey;
+    private final BloomFilter bloomFilter;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private Segment(File file, SegmentSource source, long id, int level, long sequence, long sizeBytes,
+            int indexOffset, int entryCount, long minKey, long maxKey, BloomFilter bloomFilter
+    ) {
+        this.file = file;
+        this.source = source;
+        this.id = id;
+        this.level = level;
+        this.sequence = sequence;
+        this.sizeBytes = sizeBytes;
+        this.indexOffset = indexOffset;
+        this.entryCount = entryCount;
+        this.minKey = minKey;
+        this.maxKey = maxKey;
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Reads go through the block cache if one is given.
+     */
+    public static Segment open(File file, long id, int level, long sequence, SegmentSource.ReadMode readMode,
+            LongKeyCache<byte[]> blockCache
+    ) {
+        SegmentSource source = SegmentSource.open(file, readMode);
+        if (blockCache != null) {
+            source = new BlockCachedSegmentSource(source, id, blockCache, Parameters.BLOCK_CACHE_BLOCK_BYTES);
+        }
+        long size = source.size();
+        int magic = size < TRAILER_SIZE ? 0 : source.readInt(size - 4);
+        if (magic != MAGIC) {
+            source.close();
+            throw new IllegalStateException("Not a segment file: " + file);
+        }
+        ByteBuffer trailer = source.read(size - TRAILER_SIZE, TRAILER_SIZE);
+        int bloomFilterLength = trailer.getInt(28);
+        BloomFilter bloomFilter = BloomFilter.readFrom(source.read(trailer.getInt(24), bloomFilterLength), bloomFilterLength);
+        return new Segment(file, source, id, level, sequence, size,
+                trailer.getInt(0), trailer.getInt(4), trailer.getLong(8), trailer.getLong(16), bloomFilter);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    public long sequence() {
+        return sequence;
+    }
+
+    public long sizeBytes() {
+        return sizeBytes;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    public long minKey() {
+        return minKey;
+    }
+
+    public long maxKey() {
+        return maxKey;
+    }
+
+    int indexOffset() {
+        return indexOffset;
+    }
+
+    SegmentSource source() {
+        return source;
+    }
+
+    public boolean overlaps(long from, long to) {
+        return entryCount > 0 && minKey <= to && maxKey >= from;
+    }
+
+    public boolean mightContain(long key) {
+        return overlaps(key, key) && bloomFilter.mightContain(key);
+    }
+
+    public boolean overlaps(Segment other) {
+        return other.entryCount > 0 && overlaps(other.minKey, other.maxKey);
+    }
+
+    boolean retain() {
+        int current;
+        do {
+            current = references.get();
+            if (current <= 0) {
+                return false;
+            }
+        } while (!references.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Drops a reference; the file of a segment no longer referenced by the storage nor by any reader is deleted.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            source.close();
+            if (!file.delete()) {
+                LOGGER.log(Level.WARNING, "Cannot delete obsolete segment " + file);
+            }
+        }
+    }
+
+    /**
+     * Returns the stored entry (possibly a tombstone holding {@link KeyValueEntry#EMPTY_VALUE}) or null.
+     * The binary search reads the fixed size index slots in place.
+     */
+    public KeyValueEntry get(long key) {
+        if (!mightContain(key)) {
+            return null;
+        }
+        int low = 0;
+        int high = entryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long slot = indexOffset + (long) mid * INDEX_ENTRY_SIZE;
+            long midKey = source.readLong(slot);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                int start = source.readInt(slot + 8);
+                int length = source.readInt(slot + 12) - start;
+                return new KeyValueEntry(key, SegmentSource.decode(source.read(start, length), 0, length));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Streams stored entries (tombstones included) with keys in [from, to], in ascending key order.
+     */
+    public SegmentIterator iterator(long from, long to) {
+        return iterator(from, to, true);
+    }
+
+    /**
+     * Streams all stored entries without filling the block cache, for compactions.
+     */
+    public SegmentIterator iterator() {
+        return iterator(Long.MIN_VALUE, Long.MAX_VALUE, false);
+    }
+
+    private SegmentIterator iterator(long from, long to, boolean fillCache) {
+        if (!overlaps(from, to)) {
+            return new SegmentIterator(this, 0, 0, fillCache);
+        }
+        return new SegmentIterator(this, search(from, false), search(to, true), fillCache);
+    }
+
+    private int search(long key, boolean includeEqual) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long midKey = source.readLong(indexOffset + (long) mid * INDEX_ENTRY_SIZE);
+            if (midKey < key || (includeEqual && midKey == key)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return "Segment{id=" + id + ", level=" + level + ", sequence=" + sequence +
+                ", keys=[" + minKey + ", " + maxKey + "], entries=" + entryCount + ", bytes=" + sizeBytes + '}';
+    }
+}
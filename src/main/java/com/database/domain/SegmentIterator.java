@@ -0,0 +1,70 @@
+package com.database.domain;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a slice of a segment in chunks of index entries, each chunk followed by a single read of its values.
+ */
+public class SegmentIterator implements Iterator<KeyValueEntry> {
+    private static final int ENTRIES_PER_CHUNK = 1024;
+
+    private final Segment segment;
+    private final int end;
+    private final boolean fillCache;
+
+    private int next;
+    private ByteBuffer index;
+    private ByteBuffer data;
+    private int chunkStart;
+    private int chunkEnd;
+    private int dataStart;
+
+    SegmentIterator(Segment segment, int first, int end, boolean fillCache) {
+        this.segment = segment;
+        this.next = first;
+        this.end = end;
+        this.fillCache = fillCache;
+        this.chunkStart = first;
+        this.chunkEnd = first;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < end;
+    }
+
+    @Override
+    public KeyValueEntry next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (next >= chunkEnd) {
+            readChunk();
+        }
+        int slot = (next - chunkStart) * Segment.INDEX_ENTRY_SIZE;
+        long key = index.getLong(slot);
+        int start = index.getInt(slot + 8) - dataStart;
+        int length = index.getInt(slot + 12) - dataStart - start;
+        next++;
+        return new KeyValueEntry(key, SegmentSource.decode(data, start, length));
+    }
+
+    private void readChunk() {
+        SegmentSource source = segment.source();
+        chunkStart = next;
+        chunkEnd = Math.min(end, next + ENTRIES_PER_CHUNK);
+        int indexLength = (chunkEnd - chunkStart) * Segment.INDEX_ENTRY_SIZE;
+        index = source.read(segment.indexOffset() + (long) chunkStart * Segment.INDEX_ENTRY_SIZE, indexLength,
+                fillCache);
+
+        dataStart = index.getInt(8);
+        int dataEnd = index.getInt(indexLength - 4);
+        data = source.read(dataStart, dataEnd - dataStart, fillCache);
+    }
+
+    public Segment segment() {
+        return segment;
+    }
+}
@@ -0,0 +1,80 @@
+package com.database.domain;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Lists the live segments. A flush or a compaction becomes visible after a crash only once the manifest
+ * naming its output replaced the previous one, so segments swap in atomically and leftovers are orphans.
+ * The manifest also holds the log checkpoint, the highest write-ahead log version whose operations are all
+ * in segments; it is saved together with the flushed segments, so recovery never replays a flushed log.
+ */
+public class SegmentManifest {
+    private static final String FILE_NAME = "MANIFEST";
+    private static final String TMP_FILE_NAME = "MANIFEST_tmp";
+    private static final String LOG_CHECKPOINT = "log";
+
+    private final File file;
+    private final File tmpFile;
+
+    public SegmentManifest(File storeDirectory) {
+        this.file = new File(storeDirectory, FILE_NAME);
+        this.tmpFile = new File(storeDirectory, TMP_FILE_NAME);
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public Contents load() {
+        List<Entry> entries = new ArrayList<>();
+        long logCheckpoint = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] splitted = line.split(" ");
+                if (splitted[0].equals(LOG_CHECKPOINT)) {
+                    logCheckpoint = Long.parseLong(splitted[1]);
+                    continue;
+                }
+                entries.add(new Entry(Long.parseLong(splitted[0]), Integer.parseInt(splitted[1]), Long.parseLong(splitted[2])));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new Contents(entries, logCheckpoint);
+    }
+
+    public void save(Collection<Segment> segments, long logCheckpoint) {
+        StringBuilder content = new StringBuilder();
+        content.append(LOG_CHECKPOINT).append(' ').append(logCheckpoint).append('\n');
+        for (Segment segment : segments) {
+            content.append(segment.id()).append(' ')
+                    .append(segment.level()).append(' ')
+                    .append(segment.sequence()).append('\n');
+        }
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new RuntimeException("Cannot rename " + tmpFile + " to " + file);
+        }
+    }
+
+    public record Entry(long segmentId, int level, long sequence) {}
+
+    public record Contents(List<Entry> segments, long logCheckpoint) {}
+}
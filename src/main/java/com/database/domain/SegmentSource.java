@@ -0,0 +1,49 @@
+package com.database.domain;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Random access to the bytes of an open segment file. Returned buffers are read with absolute accessors only.
+ */
+public interface SegmentSource {
+
+    long size();
+
+    long readLong(long position);
+
+    int readInt(long position);
+
+    ByteBuffer read(long position, int length);
+
+    /**
+     * Reads that would only evict useful data from a cache, like those of compactions, pass false.
+     */
+    default ByteBuffer read(long position, int length, boolean fillCache) {
+        return read(position, length);
+    }
+
+    void close();
+
+    static SegmentSource open(File file, ReadMode readMode) {
+        return switch (readMode) {
+            case FILE_CHANNEL -> new FileChannelSegmentSource(file);
+            case MEMORY_MAPPED -> new MappedSegmentSource(file);
+        };
+    }
+
+    static String decode(ByteBuffer buffer, int offset, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    enum ReadMode {
+        FILE_CHANNEL,
+        MEMORY_MAPPED
+    }
+}
@@ -0,0 +1,122 @@
+package com.database.domain;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.database.domain.heuristic.BloomFilter;
+
+public class SegmentWriter implements AutoCloseable {
+    private final File file;
+    private final FileOutputStream fos;
+    private final DataOutputStream out;
+
+    private long[] keys = new long[1024];
+    private int[] offsets = new int[1025];
+    private int entryCount;
+    private int dataOffset;
+
+    public SegmentWriter(File file) {
+        this.file = file;
+        try {
+            this.fos = new FileOutputStream(file);
+            this.out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void append(KeyValueEntry entry) {
+        long key = entry.key();
+        if (entryCount > 0 && key <= keys[entryCount - 1]) {
+            throw new IllegalArgumentException("Segment entries must be appended in ascending key order");
+        }
+        byte[] value = entry.value().getBytes(StandardCharsets.UTF_8);
+        ensureCapacity();
+        try {
+            out.write(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        keys[entryCount] = key;
+        offsets[entryCount] = dataOffset;
+        dataOffset += value.length;
+        offsets[entryCount + 1] = dataOffset;
+        entryCount++;
+    }
+
+    public int entryCount() {
+        return entryCount;
+    }
+
+    public long bytesWritten() {
+        return (long) dataOffset + (long) entryCount * Segment.INDEX_ENTRY_SIZE
+                + (long) entryCount * Parameters.BLOOM_FILTER_BITS_PER_KEY / 8 + Segment.TRAILER_SIZE;
+    }
+
+    public File file() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            int indexOffset = dataOffset;
+            for (int i = 0; i < entryCount; i++) {
+                out.writeLong(keys[i]);
+                out.writeInt(offsets[i]);
+                out.writeInt(offsets[i + 1]);
+            }
+            int bloomFilterOffset = indexOffset + entryCount * Segment.INDEX_ENTRY_SIZE;
+            byte[] bloomFilter = bloomFilter();
+            out.write(bloomFilter);
+
+            out.writeInt(indexOffset);
+            out.writeInt(entryCount);
+            out.writeLong(entryCount == 0 ? 0 : keys[0]);
+            out.writeLong(entryCount == 0 ? 0 : keys[entryCount - 1]);
+            out.writeInt(bloomFilterOffset);
+            out.writeInt(bloomFilter.length);
+            out.writeInt(Segment.MAGIC);
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops a segment that will not be finished.
+     */
+    public void abort() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // the file is deleted anyway
+        }
+        file.delete();
+    }
+
+    private byte[] bloomFilter() {
+        BloomFilter filter = BloomFilter.create(entryCount, Parameters.BLOOM_FILTER_BITS_PER_KEY);
+        for (int i = 0; i < entryCount; i++) {
+            filter.add(keys[i]);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(filter.serializedSize());
+        filter.writeTo(buffer);
+        return buffer.array();
+    }
+
+    private void ensureCapacity() {
+        if (entryCount == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            offsets = Arrays.copyOf(offsets, keys.length + 1);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.database.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Merges adjacent (by sequence) level 0 sorted runs of similar size into one run. A sorted run is the set of
+ * segments written by one flush or compaction, they share a sequence and cover disjoint key ranges.
+ * Merging only adjacent runs keeps the merged one at the position of its inputs in read order.
+ */
+public class SizeTieredCompactionPolicy implements CompactionPolicy {
+    private final int minThreshold;
+    private final int maxThreshold;
+    private final double bucketLow;
+    private final double bucketHigh;
+    private final long minRunBytes;
+    private final long maxSegmentBytes;
+
+    public SizeTieredCompactionPolicy(int minThreshold, int maxThreshold,
+            double bucketLow, double bucketHigh, long minRunBytes, long maxSegmentBytes
+    ) {
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.bucketLow = bucketLow;
+        this.bucketHigh = bucketHigh;
+        this.minRunBytes = minRunBytes;
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    @Override
+    public Optional<Compaction> pickCompaction(List<Segment> segments) {
+        List<List<Segment>> runs = new ArrayList<>(segments.stream()
+                .filter(segment -> segment.level() == 0)
+                .collect(Collectors.groupingBy(Segment::sequence, TreeMap::new, Collectors.toList()))
+                .descendingMap()
+                .values());
+
+        List<List<Segment>> best = null;
+        double bestAverage = Double.MAX_VALUE;
+        for (int start = 0; start < runs.size(); start++) {
+            List<List<Segment>> bucket = new ArrayList<>();
+            bucket.add(runs.get(start));
+            double average = sizeBytes(runs.get(start));
+            for (int i = start + 1; i < runs.size() && bucket.size() < maxThreshold; i++) {
+                long size = sizeBytes(runs.get(i));
+                if (!isSimilar(size, average)) {
+                    break;
+                }
+                bucket.add(runs.get(i));
+                average += (size - average) / bucket.size();
+            }
+            if (bucket.size() >= minThreshold && average < bestAverage) {
+                best = bucket;
+                bestAverage = average;
+            }
+        }
+        return Optional.ofNullable(best)
+                .map(bucket -> new Compaction(bucket.stream().flatMap(List::stream).toList(), 0, maxSegmentBytes));
+    }
+
+    @Override
+    public String name() {
+        return "size-tiered";
+    }
+
+    private static long sizeBytes(List<Segment> run) {
+        return run.stream().mapToLong(Segment::sizeBytes).sum();
+    }
+
+    private boolean isSimilar(long size, double average) {
+        if (size < minRunBytes && average < minRunBytes) {
+            return true;
+        }
+        return size >= average * bucketLow && size <= average * bucketHigh;
+    }
+}
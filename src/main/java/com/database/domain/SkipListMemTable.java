@@ -0,0 +1,69 @@
+package com.database.domain;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-heap memtable backed by a lock-free skip list. Its size in bytes is estimated from the UTF-8 length of the
+ * values, which is what their flush writes, plus a fixed overhead per entry.
+ */
+public class SkipListMemTable implements MemTable {
+    // skip list node and index, boxed key, entry and string headers
+    private static final int ENTRY_OVERHEAD_BYTES = 120;
+
+    private final ConcurrentNavigableMap<Long, KeyValueEntry> entries;
+    private final long maxBytes;
+    private final AtomicInteger currentSize;
+    private final AtomicLong currentBytes;
+
+    public SkipListMemTable(long maxBytes) {
+        this.entries = new ConcurrentSkipListMap<>();
+        this.maxBytes = maxBytes;
+        this.currentSize = new AtomicInteger(0);
+        this.currentBytes = new AtomicLong(0);
+    }
+
+    @Override
+    public void add(KeyValueEntry entry) {
+        KeyValueEntry previous = entries.put(entry.key(), entry);
+        if (previous == null) {
+            currentSize.incrementAndGet();
+            currentBytes.addAndGet(ENTRY_OVERHEAD_BYTES + entry.valueBytes());
+        } else {
+            currentBytes.addAndGet(entry.valueBytes() - previous.valueBytes());
+        }
+    }
+
+    @Override
+    public KeyValueEntry getIfPresent(Long key) {
+        return entries.get(key);
+    }
+
+    @Override
+    public boolean isFull() {
+        return currentBytes.get() >= maxBytes;
+    }
+
+    @Override
+    public int size() {
+        return currentSize.get();
+    }
+
+    @Override
+    public long sizeBytes() {
+        return currentBytes.get();
+    }
+
+    @Override
+    public Iterator<KeyValueEntry> iterator() {
+        return entries.values().iterator();
+    }
+
+    @Override
+    public Iterator<KeyValueEntry> iterator(Long startKey, Long endKey) {
+        return entries.subMap(startKey, true, endKey, true).values().iterator();
+    }
+}
@@ -4,79 +4,148 @@ package com.database.domain;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
 
+/**
+ * Log of the operations not yet flushed, one file per memtable version. A record is
+ * payload length | CRC32C of the payload | {@link Operation} bytes. Replay stops at the first record that is
+ * cut short or fails its checksum, which is where a crash tore the tail of the log.
+ * Text logs of the previous format are still replayed.
+ * <p>
+ * In {@link FileMode#PREALLOCATED} mode logs are {@link MappedLogFile}s and the logs of flushed memtables are
+ * kept for reuse instead of being deleted. Their checksums cover the log version too, so the stale records of
+ * a reused log never replay; a zero length ends a log that was created filled with zeros.
+ */
 public class WriteAheadLog {
-    private static final Pattern PATTERN = Pattern.compile("^log_(\\d+)\\.txt$");
+    private static final Logger LOGGER = Logger.getLogger(WriteAheadLog.class.getName());
+
+    public enum FileMode {
+        APPEND,
+        PREALLOCATED
+    }
+
+    private static final Pattern PATTERN = Pattern.compile("^log_(\\d+)\\.(wal|mlog|txt)$");
+    private static final Pattern RECYCLED_PATTERN = Pattern.compile("^recycled_(\\d+)\\.mlog$");
+    private static final String APPEND_EXTENSION = "wal";
+    private static final String LEGACY_EXTENSION = "txt";
+    private static final String PREALLOCATED_EXTENSION = "mlog";
+    private static final int RECORD_HEADER_SIZE = 8;
 
     private final File storeDirectory;
     private final ReadOnlyLogicalTimeProvider logicalTimeProvider;
-    private File writeAheadFile;
-    private FileWriter writer;
+    private final WriteAheadLogWriter writer;
+    private final FileMode fileMode;
+    private final Deque<File> recycledLogFiles = new ConcurrentLinkedDeque<>();
+    private volatile long currentVersion;
 
-	public WriteAheadLog(String dir, ReadOnlyLogicalTimeProvider logicalTimeProvider) {
+    public WriteAheadLog(String dir, ReadOnlyLogicalTimeProvider logicalTimeProvider) {
+        this(dir, logicalTimeProvider, Parameters.WAL_DURABILITY_MODE, Parameters.WAL_FILE_MODE);
+    }
+
+    public WriteAheadLog(String dir, ReadOnlyLogicalTimeProvider logicalTimeProvider,
+            WriteAheadLogWriter.DurabilityMode durabilityMode, FileMode fileMode
+    ) {
         this.logicalTimeProvider = logicalTimeProvider;
+        this.writer = new WriteAheadLogWriter(durabilityMode, Parameters.WAL_GROUP_COMMIT_INTERVAL_MICROS);
+        this.fileMode = fileMode;
 
         storeDirectory = new File(dir + "/LOG");
-		if (!storeDirectory.exists() || !storeDirectory.isDirectory())
+        if (!storeDirectory.exists() || !storeDirectory.isDirectory())
             storeDirectory.mkdirs();
-    }
 
-    public void append(String data) {
-        try {
-            writer.append(data + "\n");
-            writer.flush();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        for (File recycled : findFiles(storeDirectory.getAbsolutePath(), RECYCLED_PATTERN.pattern(),
+                Comparator.comparing(File::getName))) {
+            if (fileMode == FileMode.PREALLOCATED) {
+                recycledLogFiles.add(recycled);
+            } else {
+                recycled.delete();
+            }
         }
     }
 
+    public void append(Operation operation) {
+        byte[] payload = operation.toBytes();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt(fileMode == FileMode.PREALLOCATED
+                ? checksum(currentVersion, payload, 0, payload.length)
+                : checksum(payload, 0, payload.length));
+        record.put(payload);
+        record.flip();
+        writer.append(record);
+    }
+
+    /**
+     * Has to be called while no append is running, the records of the new log are salted with its version.
+     */
     public void newLogFile() {
-        writeAheadFile = createNewWal();
-        adjustFileWriter();
+        long version = logicalTimeProvider.getVersion();
+        LogFile logFile = switch (fileMode) {
+            case APPEND -> new AppendLogFile(logFile(version, APPEND_EXTENSION));
+            case PREALLOCATED -> {
+                File recycled = recycledLogFiles.poll();
+                yield recycled != null
+                        ? MappedLogFile.recycle(recycled, logFile(version, PREALLOCATED_EXTENSION))
+                        : MappedLogFile.create(logFile(version, PREALLOCATED_EXTENSION),
+                        Parameters.WAL_PREALLOCATED_FILE_BYTES);
+            }
+        };
+        writer.roll(logFile);
+        currentVersion = version;
     }
 
-    public List<Operation> getUncommitedOperations() {
-        try {
-            File[] savedWriteAheadLogFiles =
-                    findFiles(storeDirectory.getAbsolutePath(), PATTERN.pattern(),
-                            Comparator.comparingLong(File::lastModified)
-                    );
-            List<Operation> uncommitedOperations = new ArrayList<>();
-            for (File file : savedWriteAheadLogFiles) {
-                try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = br.readLine()) != null) {
-                        Operation operation = Operation.deserialize(line);
-                        uncommitedOperations.add(operation);
-                    }
-                }
+    /**
+     * Makes the appended records durable as the durability mode promises and releases the current log file.
+     */
+    public void close() {
+        writer.close();
+    }
+
+    /**
+     * Decodes the logs newer than the checkpoint in parallel and returns them in version order. The logs up to
+     * the checkpoint are already persisted and get removed.
+     */
+    public List<RecoveredLog> recover(long logCheckpoint) {
+        File[] savedWriteAheadLogFiles =
+                findFiles(storeDirectory.getAbsolutePath(), PATTERN.pattern(),
+                        Comparator.comparingLong(WriteAheadLog::version)
+                );
+        List<File> uncommitedLogFiles = new ArrayList<>();
+        for (File file : savedWriteAheadLogFiles) {
+            if (version(file) > logCheckpoint) {
+                uncommitedLogFiles.add(file);
+            } else if (!recycle(file)) {
+                file.delete();
             }
-            return uncommitedOperations;
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        return uncommitedLogFiles.parallelStream()
+                .map(file -> new RecoveredLog(version(file), file.getName().endsWith(LEGACY_EXTENSION)
+                        ? readTextLog(file)
+                        : readLog(file)))
+                .toList();
     }
 
     public void removePreviousLogFiles(Long oldVersion) {
         File[] oldLogFiles =
                 findFiles(storeDirectory.getAbsolutePath(), PATTERN.pattern(),
-                        Comparator.comparingLong(File::lastModified)
+                        Comparator.comparingLong(WriteAheadLog::version)
                 );
         for (File file : oldLogFiles) {
-            Matcher matcher = PATTERN.matcher(file.getName());
-            if (matcher.matches()) {
-                long fileVersion = Long.parseLong(matcher.group(1));
-                if (fileVersion < oldVersion) {
-                    file.delete();
-                }
+            if (version(file) < oldVersion && !recycle(file)) {
+                file.delete();
             }
         }
     }
@@ -90,16 +159,91 @@ public class WriteAheadLog {
         return files;
     }
 
-    private void adjustFileWriter() {
+    private boolean recycle(File file) {
+        if (fileMode != FileMode.PREALLOCATED || !file.getName().endsWith(PREALLOCATED_EXTENSION)
+                || recycledLogFiles.size() >= Parameters.WAL_RECYCLED_FILES) {
+            return false;
+        }
+        File recycled = new File(storeDirectory, "recycled_" + version(file) + "." + PREALLOCATED_EXTENSION);
+        if (!file.renameTo(recycled)) {
+            return false;
+        }
+        recycledLogFiles.add(recycled);
+        return true;
+    }
+
+    private static List<Operation> readLog(File file) {
+        List<Operation> operations = new ArrayList<>();
+        ByteBuffer log;
         try {
-            writer = new FileWriter(writeAheadFile, true);
+            log = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        boolean preallocated = file.getName().endsWith(PREALLOCATED_EXTENSION);
+        long version = version(file);
+        while (log.remaining() >= RECORD_HEADER_SIZE) {
+            int start = log.position();
+            int length = log.getInt();
+            int checksum = log.getInt();
+            if (preallocated && length == 0) {
+                return operations;
+            }
+            if (length < 0 || length > log.remaining()
+                    || checksum != (preallocated
+                    ? checksum(version, log.array(), log.position(), length)
+                    : checksum(log.array(), log.position(), length))) {
+                // the end of a reused preallocated log looks the same as a torn record
+                LOGGER.log(preallocated ? Level.FINE : Level.WARNING,
+                        "Torn record at offset " + start + " of " + file + ", skipping the rest");
+                return operations;
+            }
+            operations.add(Operation.fromBytes(log.slice(log.position(), length)));
+            log.position(log.position() + length);
+        }
+        if (log.hasRemaining()) {
+            LOGGER.log(Level.WARNING, "Torn record header at the end of " + file);
+        }
+        return operations;
+    }
+
+    private static List<Operation> readTextLog(File file) {
+        List<Operation> operations = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                operations.add(Operation.deserialize(line));
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return operations;
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(long version, byte[] bytes, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, version));
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private static long version(File file) {
+        Matcher matcher = PATTERN.matcher(file.getName());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a log file: " + file);
+        }
+        return Long.parseLong(matcher.group(1));
     }
 
-    private File createNewWal() {
-        String filename = "_" + logicalTimeProvider.getVersion();
-        return new File(storeDirectory.getAbsolutePath() + "/log" + filename + ".txt");
+    private File logFile(long version, String extension) {
+        return new File(storeDirectory.getAbsolutePath() + "/log_" + version + "." + extension);
     }
-}
\ No newline at end of file
+
+    public record RecoveredLog(long version, List<Operation> operations) {}
+}
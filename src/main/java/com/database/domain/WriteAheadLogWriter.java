@@ -0,0 +1,226 @@
+package com.database.domain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Appends records to the current {@link LogFile}. With {@link DurabilityMode#GROUP_FSYNC} a dedicated thread
+ * collects the records of concurrent callers during a commit window, writes them with one call, forces the file
+ * once and releases all their callers together.
+ * <p>
+ * A failed write may leave part of a record behind, and replay stops there, so every later append to the same
+ * file fails as well. The next {@link #roll} starts over in a fresh file.
+ */
+public class WriteAheadLogWriter {
+    public enum DurabilityMode {
+        // a record is handed to the operating system, a machine crash may lose it
+        OS_BUFFERED,
+        // every record is forced to disk before its append returns
+        FSYNC_EACH,
+        // records are forced to disk in groups, an append returns once its group is durable
+        GROUP_FSYNC
+    }
+
+    private final DurabilityMode durabilityMode;
+    private final long groupCommitIntervalNanos;
+    // held while writing to or replacing the log file
+    private final ReentrantLock ioLock = new ReentrantLock();
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Condition recordsQueued = queueLock.newCondition();
+    private final Condition groupCommitted = queueLock.newCondition();
+    private final Thread groupCommitThread;
+
+    private LogFile logFile;
+    private Group group = new Group();
+    // the failure of the current log file
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    public WriteAheadLogWriter(DurabilityMode durabilityMode, long groupCommitIntervalMicros) {
+        this.durabilityMode = durabilityMode;
+        this.groupCommitIntervalNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitIntervalMicros);
+        this.groupCommitThread = durabilityMode == DurabilityMode.GROUP_FSYNC
+                ? Thread.ofPlatform().name("wal-group-commit").daemon().start(this::commitGroups)
+                : null;
+    }
+
+    public void append(ByteBuffer record) {
+        switch (durabilityMode) {
+            case OS_BUFFERED -> write(record, false);
+            case FSYNC_EACH -> write(record, true);
+            case GROUP_FSYNC -> appendToGroup(record);
+        }
+    }
+
+    /**
+     * Makes everything appended so far durable in the current file, then continues in the given one.
+     */
+    public void roll(LogFile next) {
+        ioLock.lock();
+        try {
+            if (durabilityMode == DurabilityMode.GROUP_FSYNC) {
+                commitQueued();
+            }
+            LogFile previous = logFile;
+            logFile = next;
+            failure = null;
+            if (previous != null) {
+                previous.close();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Commits the queued records, stops the group commit thread and closes the current file. Appends must be
+     * over by then.
+     */
+    public void close() {
+        closed = true;
+        if (groupCommitThread != null) {
+            queueLock.lock();
+            try {
+                recordsQueued.signal();
+            } finally {
+                queueLock.unlock();
+            }
+            try {
+                groupCommitThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ioLock.lock();
+        try {
+            if (logFile != null) {
+                logFile.close();
+                logFile = null;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void write(ByteBuffer record, boolean force) {
+        ioLock.lock();
+        try {
+            checkWritable();
+            logFile.write(new ByteBuffer[]{record});
+            if (force) {
+                logFile.force();
+            }
+        } catch (IOException e) {
+            failure = e;
+            throw new RuntimeException(e);
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private void appendToGroup(ByteBuffer record) {
+        Group joined;
+        queueLock.lock();
+        try {
+            checkWritable();
+            joined = group;
+            joined.records.add(record);
+            recordsQueued.signal();
+            while (!joined.committed) {
+                groupCommitted.awaitUninterruptibly();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+        if (joined.failure != null) {
+            throw new RuntimeException(joined.failure);
+        }
+    }
+
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("The write-ahead log is closed");
+        }
+        if (failure != null) {
+            throw new RuntimeException("An earlier write to the log file failed", failure);
+        }
+    }
+
+    private void commitGroups() {
+        while (true) {
+            queueLock.lock();
+            try {
+                while (group.records.isEmpty() && !closed) {
+                    recordsQueued.awaitUninterruptibly();
+                }
+            } finally {
+                queueLock.unlock();
+            }
+            if (closed) {
+                commitQueued();
+                return;
+            }
+            // the commit window: callers arriving meanwhile join the group
+            LockSupport.parkNanos(groupCommitIntervalNanos);
+            commitQueued();
+        }
+    }
+
+    private void commitQueued() {
+        ioLock.lock();
+        try {
+            Group committing;
+            queueLock.lock();
+            try {
+                committing = group;
+                group = new Group();
+            } finally {
+                queueLock.unlock();
+            }
+            if (committing.records.isEmpty()) {
+                return;
+            }
+
+            IOException error = failure;
+            if (error == null) {
+                try {
+                    logFile.write(committing.records.toArray(ByteBuffer[]::new));
+                    logFile.force();
+                } catch (IOException e) {
+                    error = e;
+                    failure = e;
+                }
+            }
+
+            queueLock.lock();
+            try {
+                committing.committed = true;
+                committing.failure = error;
+                groupCommitted.signalAll();
+            } finally {
+                queueLock.unlock();
+            }
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Records appended during one commit window; their callers learn the outcome together.
+     */
+    private static final class Group {
+        private final List<ByteBuffer> records = new ArrayList<>();
+        private boolean committed;
+        private IOException failure;
+    }
+}
@@ -0,0 +1,105 @@
+package com.database.domain;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Holds writers back when flushes fall behind. Once the immutable memtables waiting for flush reach the slowdown
+ * trigger every write is delayed in proportion to its size; once their list is full writers wait for a flush,
+ * so memory stays bounded and latency degrades gradually instead of ending in an out of memory error.
+ */
+public class WriteController {
+    private static final Logger LOGGER = Logger.getLogger(WriteController.class.getName());
+
+    public enum State {
+        NORMAL,
+        SLOWDOWN,
+        STALL
+    }
+
+    private final int maxImmutableMemTables;
+    private final int slowdownTrigger;
+    private final long delayedWriteBytesPerSecond;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    private int immutableMemTables;
+    private volatile State state = State.NORMAL;
+
+    public WriteController(int maxImmutableMemTables, int slowdownTrigger, long delayedWriteBytesPerSecond) {
+        this.maxImmutableMemTables = maxImmutableMemTables;
+        this.slowdownTrigger = slowdownTrigger;
+        this.delayedWriteBytesPerSecond = delayedWriteBytesPerSecond;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * Called before a write enters the memtable; must not be called while holding a lock the flush depends on.
+     */
+    public void beforeWrite(long bytes) {
+        switch (state) {
+            case NORMAL -> {
+            }
+            case SLOWDOWN -> LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(bytes) / delayedWriteBytesPerSecond);
+            case STALL -> awaitBelow(maxImmutableMemTables);
+        }
+    }
+
+    /**
+     * Registers a full memtable handed over for flush, first waiting until the list of immutable memtables has room.
+     */
+    public void memTableSealed() {
+        lock.lock();
+        try {
+            awaitBelow(maxImmutableMemTables);
+            immutableMemTables++;
+            updateState();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void memTableFlushed() {
+        lock.lock();
+        try {
+            immutableMemTables--;
+            updateState();
+            flushed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitBelow(int limit) {
+        lock.lock();
+        try {
+            while (immutableMemTables >= limit) {
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void updateState() {
+        State previous = state;
+        if (immutableMemTables >= maxImmutableMemTables) {
+            state = State.STALL;
+        } else if (immutableMemTables >= slowdownTrigger) {
+            state = State.SLOWDOWN;
+        } else {
+            state = State.NORMAL;
+        }
+        if (state != previous) {
+            LOGGER.log(Level.INFO, "Write state " + previous + " -> " + state
+                    + " with " + immutableMemTables + " memtables waiting for flush");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.database.domain.heuristic;
+
+import java.nio.ByteBuffer;
+
+public class BloomFilter {
+    private final long[] bits;
+    private final int numHashFunctions;
+
+    private BloomFilter(long[] bits, int numHashFunctions) {
+        this.bits = bits;
+        this.numHashFunctions = numHashFunctions;
+    }
+
+    public static BloomFilter create(int expectedKeys, int bitsPerKey) {
+        long numBits = Math.max(64, (long) expectedKeys * bitsPerKey);
+        int numHashFunctions = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2))));
+        return new BloomFilter(new long[(int) ((numBits + 63) / 64)], numHashFunctions);
+    }
+
+    public void add(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash = mix(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long numBits = (long) bits.length * 64;
+        for (int i = 0; i < numHashFunctions; i++) {
+            long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % numBits;
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int serializedSize() {
+        return 4 + bits.length * 8;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(numHashFunctions);
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+    }
+
+    public static BloomFilter readFrom(ByteBuffer buffer, int length) {
+        int numHashFunctions = buffer.getInt(0);
+        long[] bits = new long[(length - 4) / 8];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong(4 + i * 8);
+        }
+        return new BloomFilter(bits, numHashFunctions);
+    }
+
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
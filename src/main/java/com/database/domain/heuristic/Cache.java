@@ -0,0 +1,23 @@
+package com.database.domain.heuristic;
+
+import java.util.Optional;
+
+public interface Cache<K, V> {
+    /**
+     * Returns the cached value or null, without allocating on the read path.
+     */
+    V getIfPresent(K key);
+
+    default Optional<V> get(K key) {
+        return Optional.ofNullable(getIfPresent(key));
+    }
+
+    void put(K key, V value);
+
+    /**
+     * Caches a value loaded from a slower tier unless a newer one was put meanwhile.
+     */
+    void putIfAbsent(K key, V value);
+
+    CacheStats stats();
+}
@@ -0,0 +1,17 @@
+package com.database.domain.heuristic;
+
+public record CacheStats(long hits, long misses) {
+    public double hitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    public CacheStats plus(CacheStats other) {
+        return new CacheStats(hits + other.hits, misses + other.misses);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, hit ratio=%.3f", hits, misses, hitRatio());
+    }
+}
@@ -0,0 +1,89 @@
+package com.database.domain.heuristic;
+
+/**
+ * Count-min sketch estimating how often a key was seen recently. Counters saturate at 15, as 4 bit counters
+ * would, but take a byte each to keep the code simple. After a sample of {@code 10 * capacity} increments every
+ * counter is halved, so the estimate follows the current popularity instead of the whole history.
+ * Not thread-safe.
+ */
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+
+    private byte[] counters;
+    private int widthMask;
+    private int sampleSize;
+    private int additions;
+
+    public FrequencySketch(int capacity) {
+        int width = width(capacity);
+        this.counters = new byte[DEPTH * width];
+        this.widthMask = width - 1;
+        this.sampleSize = 10 * Math.max(1, capacity);
+    }
+
+    /**
+     * Widens the sketch for more keys, keeping the counts. A key's column in a wider row extends its old column
+     * by one hash bit, so both new columns start with the old count: the estimates stay upper bounds and get
+     * sharper as the counters are halved.
+     */
+    public void ensureCapacity(int capacity) {
+        int width = width(capacity);
+        int oldWidth = widthMask + 1;
+        sampleSize = Math.max(sampleSize, 10 * Math.max(1, capacity));
+        if (width <= oldWidth) {
+            return;
+        }
+        byte[] widened = new byte[DEPTH * width];
+        for (int row = 0; row < DEPTH; row++) {
+            for (int column = 0; column < width; column++) {
+                widened[row * width + column] = counters[row * oldWidth + (column & (oldWidth - 1))];
+            }
+        }
+        counters = widened;
+        widthMask = width - 1;
+    }
+
+    public int frequency(Object key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters[index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    public void increment(Object key) {
+        int hash = key.hashCode();
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = index(hash, row);
+            if (counters[index] < MAX_COUNT) {
+                counters[index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>= 1;
+        }
+        additions /= 2;
+    }
+
+    private static int width(int capacity) {
+        return Integer.highestOneBit(Math.max(16, capacity - 1) << 1);
+    }
+
+    private int index(int hash, int row) {
+        long mixed = (hash + SEEDS[row]) * SEEDS[row];
+        return row * (widthMask + 1) + ((int) (mixed >>> 32) & widthMask);
+    }
+}
@@ -2,53 +2,94 @@ package com.database.domain.heuristic;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
-public class LRUCache<K, V> {
-    private final int capacity;
+/**
+ * Evicts the least recently used entries once their total weight exceeds the maximum; an entry heavier than
+ * the maximum on its own is not cached. Not thread-safe, {@link ShardedCache} guards it for concurrent use.
+ */
+public class LRUCache<K, V> implements Cache<K, V> {
+    private final long maxWeight;
+    private final Weigher<K, V> weigher;
     private final Map<K, Node<K, V>> cacheMap;
     private Node<K, V> head;
     private Node<K, V> tail;
+    private long weight;
+    private long hits;
+    private long misses;
 
     public LRUCache(int capacity) {
-        if (capacity <= 0) {
+        this(capacity, Weigher.singleton());
+    }
+
+    public LRUCache(long maxWeight, Weigher<K, V> weigher) {
+        if (maxWeight <= 0) {
             throw new IllegalArgumentException("Cache capacity must be positive.");
         }
-        this.capacity = capacity;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
         this.cacheMap = new HashMap<>();
-        this.head = new Node<>(null, null);
-        this.tail = new Node<>(null, null);
+        this.head = new Node<>(null, null, 0);
+        this.tail = new Node<>(null, null, 0);
         head.next = tail;
         tail.prev = head;
     }
 
-    public Optional<V> get(K key) {
+    @Override
+    public V getIfPresent(K key) {
         Node<K, V> node = cacheMap.get(key);
         if (node == null) {
-            return Optional.empty();
+            misses++;
+            return null;
         }
+        hits++;
         moveToFront(node);
-        return Optional.ofNullable(node.value);
+        return node.value;
     }
 
+    @Override
     public void put(K key, V value) {
         Node<K, V> existingNode = cacheMap.get(key);
+        int entryWeight = weigher.weigh(key, value);
+        if (entryWeight > maxWeight) {
+            // dropping the older value keeps the cache from serving it
+            if (existingNode != null) {
+                removeNode(existingNode);
+                cacheMap.remove(key);
+                weight -= existingNode.weight;
+            }
+            return;
+        }
 
         if (existingNode != null) {
             existingNode.value = value;
+            weight += entryWeight - existingNode.weight;
+            existingNode.weight = entryWeight;
             moveToFront(existingNode);
         } else {
             // Key is new
-            Node<K, V> newNode = new Node<>(key, value);
+            Node<K, V> newNode = new Node<>(key, value, entryWeight);
             cacheMap.put(key, newNode);
             addNodeToFront(newNode);
+            weight += entryWeight;
+        }
 
-            if (cacheMap.size() > capacity) {
-                removeLRU();
-            }
+        while (weight > maxWeight) {
+            removeLRU();
+        }
+    }
+
+    @Override
+    public void putIfAbsent(K key, V value) {
+        if (!cacheMap.containsKey(key)) {
+            put(key, value);
         }
     }
 
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits, misses);
+    }
+
     private void moveToFront(Node<K, V> node) {
         removeNode(node);
         addNodeToFront(node);
@@ -73,18 +114,21 @@ public class LRUCache<K, V> {
         Node<K, V> lruNode = tail.prev;
         removeNode(lruNode);
         cacheMap.remove(lruNode.key);
+        weight -= lruNode.weight;
         return lruNode.key;
     }
 
     private static class Node<K, V> {
         K key;
         V value;
+        int weight;
         Node<K, V> prev;
         Node<K, V> next;
 
-        public Node(K key, V value) {
+        public Node(K key, V value, int weight) {
             this.key = key;
             this.value = value;
+            this.weight = weight;
             this.prev = null;
             this.next = null;
         }
@@ -0,0 +1,244 @@
+package com.database.domain.heuristic;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Thread-safe cache from {@code long} keys to values, without boxing or per entry nodes, bounded by the
+ * bytes its entries take. Each lock guarded shard is an open addressing table with linear probing over
+ * parallel arrays, kept at most half full, and evicts with the CLOCK approximation of LRU: the hand sweeps the
+ * table, sparing once every entry read since its last pass. A new entry starts unreferenced, so keys read only
+ * once leave first.
+ */
+public class LongKeyCache<V> {
+    // two slots of the parallel arrays and the header of the value
+    public static final int ENTRY_OVERHEAD_BYTES = 2 * (Long.BYTES + 8 + 1) + 16;
+
+    private final Shard<V>[] shards;
+
+    /**
+     * The weigher gives the bytes a value takes beyond its header.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LongKeyCache(long maxBytes, int shardCount, ToIntFunction<? super V> weigher) {
+        if (maxBytes <= 0 || shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive and shard count a power of two.");
+        }
+        this.shards = new Shard[shardCount];
+        long shardBytes = (maxBytes + shardCount - 1) / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard<>(shardBytes, weigher);
+        }
+    }
+
+    /**
+     * Returns the cached value or null.
+     */
+    public V getIfPresent(long key) {
+        long hash = mix(key);
+        Shard<V> shard = shard(hash);
+        shard.lock.lock();
+        try {
+            return shard.get(key, (int) hash);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public void put(long key, V value) {
+        long hash = mix(key);
+        Shard<V> shard = shard(hash);
+        shard.lock.lock();
+        try {
+            shard.put(key, (int) hash, value, true);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public void putIfAbsent(long key, V value) {
+        long hash = mix(key);
+        Shard<V> shard = shard(hash);
+        shard.lock.lock();
+        try {
+            shard.put(key, (int) hash, value, false);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public CacheStats stats() {
+        CacheStats total = new CacheStats(0, 0);
+        for (Shard<V> shard : shards) {
+            shard.lock.lock();
+            try {
+                total = total.plus(new CacheStats(shard.hits, shard.misses));
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    private Shard<V> shard(long hash) {
+        return shards[(int) (hash >>> 32) & (shards.length - 1)];
+    }
+
+    private static long mix(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Shard<V> {
+        private static final int INITIAL_SLOTS = 16;
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long maxBytes;
+        private final ToIntFunction<? super V> weigher;
+        private int mask;
+        private long[] keys;
+        // null marks a free slot
+        private V[] values;
+        private boolean[] referenced;
+        private int size;
+        private long bytes;
+        private int hand;
+        private long hits;
+        private long misses;
+
+        Shard(long maxBytes, ToIntFunction<? super V> weigher) {
+            this.maxBytes = maxBytes;
+            this.weigher = weigher;
+            allocate(INITIAL_SLOTS);
+        }
+
+        V get(long key, int hash) {
+            int slot = find(key, hash);
+            if (slot < 0) {
+                misses++;
+                return null;
+            }
+            hits++;
+            referenced[slot] = true;
+            return values[slot];
+        }
+
+        void put(long key, int hash, V value, boolean replace) {
+            int slot = find(key, hash);
+            if (slot >= 0 && !replace) {
+                return;
+            }
+            if (weight(value) > maxBytes) {
+                // dropping the older value keeps the cache from serving it
+                if (slot >= 0) {
+                    remove(slot);
+                }
+                return;
+            }
+            if (slot >= 0) {
+                bytes += weight(value) - weight(values[slot]);
+                values[slot] = value;
+                referenced[slot] = true;
+                while (bytes > maxBytes) {
+                    evict();
+                }
+                return;
+            }
+            while (bytes + weight(value) > maxBytes) {
+                evict();
+            }
+            if (2 * (size + 1) > keys.length) {
+                allocate(2 * keys.length);
+            }
+            insert(key, hash, value, false);
+        }
+
+        private long weight(V value) {
+            return ENTRY_OVERHEAD_BYTES + weigher.applyAsInt(value);
+        }
+
+        private int find(long key, int hash) {
+            for (int slot = hash & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void insert(long key, int hash, V value, boolean reference) {
+            int slot = hash & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            referenced[slot] = reference;
+            size++;
+            bytes += weight(value);
+        }
+
+        /**
+         * Allocates a table with the given number of slots and rehashes the entries into it.
+         */
+        @SuppressWarnings("unchecked")
+        private void allocate(int slots) {
+            long[] oldKeys = keys;
+            V[] oldValues = values;
+            boolean[] oldReferenced = referenced;
+            mask = slots - 1;
+            keys = new long[slots];
+            values = (V[]) new Object[slots];
+            referenced = new boolean[slots];
+            size = 0;
+            bytes = 0;
+            hand = 0;
+            if (oldValues != null) {
+                for (int i = 0; i < oldValues.length; i++) {
+                    if (oldValues[i] != null) {
+                        insert(oldKeys[i], (int) mix(oldKeys[i]), oldValues[i], oldReferenced[i]);
+                    }
+                }
+            }
+        }
+
+        private void evict() {
+            while (true) {
+                int slot = hand;
+                hand = (hand + 1) & mask;
+                if (values[slot] == null) {
+                    continue;
+                }
+                if (referenced[slot]) {
+                    referenced[slot] = false;
+                } else {
+                    remove(slot);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Backward shift deletion: later entries of the probe run move up, so lookups never need tombstones.
+         */
+        private void remove(int slot) {
+            bytes -= weight(values[slot]);
+            size--;
+            int free = slot;
+            for (int next = (free + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+                int home = (int) mix(keys[next]) & mask;
+                // the entry may fill the free slot only if that lies cyclically between its home slot and itself
+                if (((next - home) & mask) >= ((next - free) & mask)) {
+                    keys[free] = keys[next];
+                    values[free] = values[next];
+                    referenced[free] = referenced[next];
+                    free = next;
+                }
+            }
+            values[free] = null;
+            referenced[free] = false;
+        }
+    }
+}
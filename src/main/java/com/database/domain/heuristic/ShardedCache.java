@@ -0,0 +1,82 @@
+package com.database.domain.heuristic;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+
+/**
+ * Thread-safe cache striping keys over independent single-threaded caches, each guarded by its own lock,
+ * so threads working on different shards never contend. Eviction and admission are decided per shard.
+ */
+public class ShardedCache<K, V> implements Cache<K, V> {
+    private final Cache<K, V>[] shards;
+    private final ReentrantLock[] locks;
+
+    /**
+     * Each shard gets an equal part of the maximum weight.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardedCache(long maxWeight, int shardCount, LongFunction<Cache<K, V>> shardFactory) {
+        if (maxWeight <= 0 || shardCount <= 0 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive and shard count a power of two.");
+        }
+        this.shards = new Cache[shardCount];
+        this.locks = new ReentrantLock[shardCount];
+        long shardWeight = (maxWeight + shardCount - 1) / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = shardFactory.apply(shardWeight);
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public V getIfPresent(K key) {
+        int shard = shard(key);
+        locks[shard].lock();
+        try {
+            return shards[shard].getIfPresent(key);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    @Override
+    public void put(K key, V value) {
+        int shard = shard(key);
+        locks[shard].lock();
+        try {
+            shards[shard].put(key, value);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    @Override
+    public void putIfAbsent(K key, V value) {
+        int shard = shard(key);
+        locks[shard].lock();
+        try {
+            shards[shard].putIfAbsent(key, value);
+        } finally {
+            locks[shard].unlock();
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        CacheStats total = new CacheStats(0, 0);
+        for (int i = 0; i < shards.length; i++) {
+            locks[i].lock();
+            try {
+                total = total.plus(shards[i].stats());
+            } finally {
+                locks[i].unlock();
+            }
+        }
+        return total;
+    }
+
+    private int shard(K key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (shards.length - 1);
+    }
+}
@@ -0,0 +1,251 @@
+package com.database.domain.heuristic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * W-TinyLFU cache. New keys enter a small LRU window; a key leaving the window only gets into the main
+ * region if the {@link FrequencySketch} has seen it more often than the main region's eviction victim,
+ * so scans and keys read once cannot push out frequently read ones. The main region is a segmented LRU:
+ * keys hit again while on probation move to the protected segment. Every region is bounded by the total
+ * weight of its entries; an entry heavier than the whole cache is not cached.
+ * <p>
+ * Not thread-safe, {@link ShardedCache} guards it for concurrent use.
+ */
+public class WTinyLfuCache<K, V> implements Cache<K, V> {
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int INITIAL_SKETCH_CAPACITY = 1024;
+
+    private enum Segment {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private final Map<K, Node<K, V>> cacheMap = new HashMap<>();
+    private final Weigher<K, V> weigher;
+    private final long maxWeight;
+    private final long maxWindow;
+    private final long maxMain;
+    private final long maxProtected;
+    private final AccessOrder<K, V> window = new AccessOrder<>();
+    private final AccessOrder<K, V> probation = new AccessOrder<>();
+    private final AccessOrder<K, V> protectedSegment = new AccessOrder<>();
+    // the sketch is sized by the number of entries, which depends on their weights; it is widened, keeping its
+    // counts, as the cache grows
+    private final FrequencySketch sketch;
+    private int sketchCapacity;
+    private long hits;
+    private long misses;
+
+    public WTinyLfuCache(int capacity) {
+        this(capacity, Weigher.singleton());
+    }
+
+    public WTinyLfuCache(long maxWeight, Weigher<K, V> weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+        }
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.maxWindow = Math.max(1, maxWeight * WINDOW_PERCENT / 100);
+        this.maxMain = maxWeight - maxWindow;
+        this.maxProtected = maxMain * PROTECTED_PERCENT / 100;
+        this.sketchCapacity = (int) Math.min(maxWeight, INITIAL_SKETCH_CAPACITY);
+        this.sketch = new FrequencySketch(sketchCapacity);
+    }
+
+    @Override
+    public V getIfPresent(K key) {
+        sketch.increment(key);
+        Node<K, V> node = cacheMap.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        put(key, value, true);
+    }
+
+    /**
+     * A miss already counted the access, the value loaded for it does not count again.
+     */
+    @Override
+    public void putIfAbsent(K key, V value) {
+        if (!cacheMap.containsKey(key)) {
+            put(key, value, false);
+        }
+    }
+
+    private void put(K key, V value, boolean countAccess) {
+        Node<K, V> existingNode = cacheMap.get(key);
+        int entryWeight = weigher.weigh(key, value);
+        if (existingNode != null) {
+            if (entryWeight > maxWeight) {
+                // dropping the older value keeps the cache from serving it
+                evict(existingNode);
+                return;
+            }
+            existingNode.value = value;
+            segment(existingNode).reweigh(existingNode, entryWeight);
+            onHit(existingNode);
+            evictFromWindow();
+            evictFromMain();
+            return;
+        }
+        if (countAccess) {
+            sketch.increment(key);
+        }
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        Node<K, V> node = new Node<>(key, value, entryWeight, Segment.WINDOW);
+        cacheMap.put(key, node);
+        window.addLast(node);
+        evictFromWindow();
+        if (cacheMap.size() > sketchCapacity) {
+            sketchCapacity = 2 * cacheMap.size();
+            sketch.ensureCapacity(sketchCapacity);
+        }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits, misses);
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW -> window.moveToLast(node);
+            case PROTECTED -> protectedSegment.moveToLast(node);
+            case PROBATION -> {
+                probation.remove(node);
+                node.segment = Segment.PROTECTED;
+                protectedSegment.addLast(node);
+                while (protectedSegment.weight() > maxProtected) {
+                    Node<K, V> demoted = protectedSegment.removeFirst();
+                    demoted.segment = Segment.PROBATION;
+                    probation.addLast(demoted);
+                }
+            }
+        }
+    }
+
+    private void evictFromWindow() {
+        while (window.weight() > maxWindow) {
+            admit(window.removeFirst());
+        }
+    }
+
+    /**
+     * The candidate evicted from the window competes with the least recently used keys of the main region
+     * until it fits or loses.
+     */
+    private void admit(Node<K, V> candidate) {
+        candidate.segment = Segment.PROBATION;
+        probation.addLast(candidate);
+        while (probation.weight() + protectedSegment.weight() > maxMain) {
+            Node<K, V> victim = probation.first() != candidate ? probation.first() : protectedSegment.first();
+            if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                evict(candidate);
+                return;
+            }
+            evict(victim);
+        }
+    }
+
+    private void evictFromMain() {
+        while (probation.weight() + protectedSegment.weight() > maxMain) {
+            evict(probation.first() != null ? probation.first() : protectedSegment.first());
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        segment(node).remove(node);
+        cacheMap.remove(node.key);
+    }
+
+    private AccessOrder<K, V> segment(Node<K, V> node) {
+        return switch (node.segment) {
+            case WINDOW -> window;
+            case PROBATION -> probation;
+            case PROTECTED -> protectedSegment;
+        };
+    }
+
+    private static class Node<K, V> {
+        final K key;
+        V value;
+        int weight;
+        Segment segment;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight, Segment segment) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * Doubly linked list from the least to the most recently used node, tracking the weight of its nodes.
+     */
+    private static class AccessOrder<K, V> {
+        private final Node<K, V> sentinel = new Node<>(null, null, 0, null);
+        private long weight;
+
+        AccessOrder() {
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+        }
+
+        long weight() {
+            return weight;
+        }
+
+        Node<K, V> first() {
+            return sentinel.next == sentinel ? null : sentinel.next;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = sentinel.prev;
+            node.next = sentinel;
+            sentinel.prev.next = node;
+            sentinel.prev = node;
+            weight += node.weight;
+        }
+
+        Node<K, V> removeFirst() {
+            Node<K, V> first = sentinel.next;
+            remove(first);
+            return first;
+        }
+
+        void remove(Node<K, V> node) {
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+            weight -= node.weight;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            remove(node);
+            addLast(node);
+        }
+
+        void reweigh(Node<K, V> node, int newWeight) {
+            weight += newWeight - node.weight;
+            node.weight = newWeight;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.database.domain.heuristic;
+
+/**
+ * Estimates what a cached entry costs, in the unit of the cache's maximum weight.
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+    int weigh(K key, V value);
+
+    static <K, V> Weigher<K, V> singleton() {
+        return (key, value) -> 1;
+    }
+}
@@ -1,35 +1,47 @@
 package com.database.replication;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import com.database.domain.Parameters;
-
+/**
+ * Forwards write operations to the replicas, over one pipelined binary connection per replica, whichever
+ * protocol the operation arrived in. An operation is sent to all replicas at once and the broadcast waits for
+ * all of them; operations broadcast concurrently share the connections and reach a replica in the order they
+ * were sent, which is the order it applies them in.
+ */
 public class BroadcasterClientCommands {
     private static final Logger LOGGER = Logger.getLogger(BroadcasterClientCommands.class.getName());
 
-    private final Collection<NodeAddressWithId> replicaNodes;
+    private final List<PipelinedConnection> replicaConnections;
 
     public BroadcasterClientCommands(Collection<NodeAddressWithId> replicaNodes) {
-        this.replicaNodes = replicaNodes;
+        this.replicaConnections = replicaNodes.stream()
+                .map(replicaNode -> new PipelinedConnection(replicaNode.address()))
+                .toList();
     }
 
-    void broadcast(String operationRaw) {
-        for (NodeAddressWithId replicaNode : replicaNodes) {
-            String replicaHost = replicaNode.address().host();
-            int replicaPort = replicaNode.address().port();
-            try (Socket socket = new Socket(replicaHost, replicaPort);
-                    PrintWriter out = new PrintWriter(socket.getOutputStream(), true)
-            ) {
-                LOGGER.log(Level.INFO, "Broadcasting operation: " + Parameters.maxLogOperationLength(operationRaw) + " to " + replicaHost + ":" + replicaPort);
-                out.write(operationRaw);
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Error broadcasting operation: " + operationRaw + " to " + replicaHost + ":" + replicaPort, e);
-            }
+    void broadcast(Command command) {
+        ByteBuffer frame = command.toFrame();
+        List<CompletableFuture<ByteBuffer>> responses = new ArrayList<>(replicaConnections.size());
+        for (PipelinedConnection connection : replicaConnections) {
+            NodeAddress replica = connection.address();
+            LOGGER.log(Level.INFO, "Broadcasting operation: " + command.describe() + " to " + replica.host() + ":" + replica.port());
+            responses.add(connection.sendAsync(frame)
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            LOGGER.log(Level.WARNING, "Error broadcasting operation: " + command.describe() + " to " + replica.host() + ":" + replica.port(), e);
+                        }
+                    }));
+        }
+        try {
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+        } catch (Exception e) {
+            // already logged per replica
         }
     }
 }
@@ -1,48 +1,90 @@
 package com.database.replication;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.database.domain.Parameters;
+import com.database.replication.dto.BinaryProtocol;
 
+/**
+ * Serves each connection until the client closes it or stays idle for {@link Parameters#CLIENT_IDLE_TIMEOUT_MILLIS}.
+ * Commands and responses are lines, or {@link BinaryProtocol} frames if the first byte a client sends is
+ * {@link BinaryProtocol#MAGIC}. The lines of a connection are handled one at a time, in order. Frames carry request
+ * ids, so up to {@link Parameters#MAX_IN_FLIGHT_COMMANDS} of them run at once and are answered as they finish;
+ * they start in the order they were sent, and a write only starts once the earlier writes of the connection to
+ * its key finished (see {@link WriteOrder}), so those still apply in order.
+ * Depending on {@link Parameters#SERVER_MODE} a connection has its own thread or is multiplexed by an
+ * {@link EventLoopServer}, which then runs the commands on the given executor.
+ */
 public final class ClientHandler {
     private static final Logger LOGGER = Logger.getLogger(ClientHandler.class.getName());
+    // a batch as a line takes about as many characters as bytes in a frame
+    private static final int MAX_LINE_CHARS = BinaryProtocol.MAX_FRAME_BYTES;
 
     private final String id;
     private final NodeAddress clientAddress;
     private final NodeRole role;
     private final ExecutorService executorService;
+    // runs the pipelined commands of binary connections that have their own thread
+    private final ExecutorService commandExecutor;
+    private final Set<Socket> openConnections = ConcurrentHashMap.newKeySet();
     private ServerSocket serverSocket;
+    private volatile EventLoopServer eventLoopServer;
 
     public ClientHandler(String id, NodeAddress clientAddress, NodeRole role, ExecutorService executorService) {
         this.id = id;
         this.clientAddress = clientAddress;
         this.role = role;
         this.executorService = executorService;
+        this.commandExecutor = Parameters.SERVER_MODE == Parameters.ServerMode.EVENT_LOOP
+                ? executorService
+                : Parameters.executorServiceForCommands();
     }
 
     public void consumeCommand(CommandHandler commandHandler) {
-        consumeCommand(commandHandler, operationRaw -> {});
+        consumeCommand(commandHandler, command -> {});
     }
 
     public void consumeCommand(CommandHandler commandHandler, CommandPostHandler commandPostHandler) {
+        if (Parameters.SERVER_MODE == Parameters.ServerMode.EVENT_LOOP) {
+            consumeCommandWithEventLoops(commandHandler, commandPostHandler);
+            return;
+        }
         try {
             this.serverSocket = new ServerSocket(clientAddress.port(), 50, InetAddress.getByName(clientAddress.host()));
 
             LOGGER.log(Level.INFO,"Node " + id + " starting on port " + clientAddress.port() + " as " + role);
             while (!Thread.currentThread().isInterrupted()) {
                 Socket clientSocket = serverSocket.accept();
-                executorService.submit(() -> handleMessage(commandHandler, commandPostHandler, clientSocket));
+                try {
+                    executorService.submit(() -> handleMessage(commandHandler, commandPostHandler, clientSocket));
+                } catch (RejectedExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Node " + id + " rejecting connection from " + clientSocket.getInetAddress() + ": too many connections");
+                    clientSocket.close();
+                }
             }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Error: " + e.getMessage());
@@ -51,34 +93,66 @@ public final class ClientHandler {
         }
     }
 
+    private void consumeCommandWithEventLoops(CommandHandler commandHandler, CommandPostHandler commandPostHandler) {
+        eventLoopServer = new EventLoopServer(id, clientAddress, executorService, Parameters.EVENT_LOOP_THREADS,
+                Parameters.CLIENT_IDLE_TIMEOUT_MILLIS, Parameters.EVENT_LOOP_MAX_CONNECTIONS, Parameters.MAX_IN_FLIGHT_COMMANDS,
+                (command, from) -> respond(commandHandler, commandPostHandler, command, from));
+        LOGGER.log(Level.INFO,"Node " + id + " starting on port " + clientAddress.port() + " as " + role + " with event loops");
+        try {
+            eventLoopServer.serve();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Error: " + e.getMessage());
+        } finally {
+            stopConsuming();
+        }
+    }
+
+    /**
+     * Also closes the open connections, their commands were meant for the role this handler served.
+     */
     public void stopConsuming() {
+        if (eventLoopServer != null) {
+            eventLoopServer.close();
+            return;
+        }
+        commandExecutor.shutdown();
         try {
             serverSocket.close();
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
         }
+        for (Socket connection : openConnections) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
+            }
+        }
     }
 
     private void handleMessage(CommandHandler commandHandler, CommandPostHandler commandPostHandler, Socket clientSocket) {
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(clientSocket.getOutputStream()))
+        openConnections.add(clientSocket);
+        try (BufferedInputStream in = new BufferedInputStream(clientSocket.getInputStream());
+                BufferedOutputStream out = new BufferedOutputStream(clientSocket.getOutputStream())
         ) {
-            String operationRaw = in.readLine();
-            LOGGER.log(Level.INFO, "Node: " + id + " received command: " + Parameters.maxLogOperationLength(operationRaw) + " from " + clientSocket.getInetAddress());
-
-            String response = commandHandler.handleCommand(operationRaw);
-            commandPostHandler.accept(operationRaw);
-
-            LOGGER.log(Level.INFO, "Node: " + id + " handled command: " + Parameters.maxLogOperationLength(operationRaw) + " from " + clientSocket.getInetAddress());
-
-            if (response != null) {
-                out.write(response);
-                out.flush();
-                LOGGER.log(Level.INFO,"Node: " + id + " returned response: " + Parameters.maxLogOperationLength(response) + " from " + clientSocket.getInetAddress());
+            clientSocket.setSoTimeout(Parameters.CLIENT_IDLE_TIMEOUT_MILLIS);
+            clientSocket.setTcpNoDelay(true);
+            in.mark(1);
+            int first = in.read();
+            if (first == BinaryProtocol.MAGIC) {
+                serveBinary(commandHandler, commandPostHandler, clientSocket, new DataInputStream(in), out);
+            } else if (first >= 0) {
+                in.reset();
+                serveText(commandHandler, commandPostHandler, clientSocket,
+                        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                        new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
             }
+        } catch (SocketTimeoutException e) {
+            LOGGER.log(Level.FINE, "Node: " + id + " closing idle connection from " + clientSocket.getInetAddress());
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
         } finally {
+            openConnections.remove(clientSocket);
             try {
                 clientSocket.close();
             } catch (IOException e) {
@@ -87,7 +161,152 @@ public final class ClientHandler {
         }
     }
 
-    public interface CommandPostHandler extends Consumer<String> {
-        void accept(String operationRaw);
+    private void serveText(CommandHandler commandHandler, CommandPostHandler commandPostHandler, Socket clientSocket,
+            BufferedReader in, BufferedWriter out
+    ) throws IOException {
+        String operationRaw;
+        while ((operationRaw = readLine(in)) != null) {
+            String response = handleCommand(commandHandler, commandPostHandler, operationRaw, clientSocket.getInetAddress());
+
+            // every command gets a response line, so the client knows where the next response starts
+            out.write(response);
+            out.newLine();
+            out.flush();
+            LOGGER.log(Level.INFO,"Node: " + id + " returned response: " + Parameters.maxLogOperationLength(response) + " from " + clientSocket.getInetAddress());
+        }
+    }
+
+    /**
+     * Like {@link BufferedReader#readLine()}, but gives up on lines longer than {@link #MAX_LINE_CHARS}.
+     */
+    private static String readLine(BufferedReader in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (line.length() == MAX_LINE_CHARS) {
+                throw new IOException("Line longer than " + MAX_LINE_CHARS + " characters");
+            }
+            line.append((char) c);
+        }
+        if (c < 0 && line.isEmpty()) {
+            return null;
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') {
+            line.setLength(length - 1);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Reads the frames and hands them to {@code commandExecutor}, whose threads write the responses. Reading
+     * stops while the connection has too many commands in flight, or while a write waits for an earlier one.
+     */
+    private void serveBinary(CommandHandler commandHandler, CommandPostHandler commandPostHandler, Socket clientSocket,
+            DataInputStream in, OutputStream out
+    ) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(Parameters.MAX_IN_FLIGHT_COMMANDS);
+        WriteOrder writeOrder = new WriteOrder();
+        ReentrantLock outLock = new ReentrantLock();
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                int requestId = in.readInt();
+                if (length <= 0 || length > BinaryProtocol.MAX_FRAME_BYTES) {
+                    LOGGER.log(Level.WARNING, "Node: " + id + " closing connection from " + clientSocket.getInetAddress() + ": invalid frame length " + length);
+                    return;
+                }
+                byte[] request = BinaryProtocol.readBody(in, length);
+                Command command = Command.ofBinary(ByteBuffer.wrap(request));
+                boolean write = command.isWrite();
+                Long writeKey = write ? command.writeKey() : null;
+
+                inFlight.acquire();
+                if (write) {
+                    writeOrder.start(writeKey);
+                }
+                try {
+                    commandExecutor.execute(() -> {
+                        try {
+                            ByteBuffer response = handleBinaryCommand(commandHandler, commandPostHandler, ByteBuffer.wrap(request), clientSocket.getInetAddress());
+                            BinaryProtocol.withRequestId(response, requestId);
+                            outLock.lock();
+                            try {
+                                out.write(response.array(), response.arrayOffset() + response.position(), response.remaining());
+                                out.flush();
+                            } finally {
+                                outLock.unlock();
+                            }
+                        } catch (IOException e) {
+                            LOGGER.log(Level.FINE, "Node: " + id + " cannot answer " + clientSocket.getInetAddress() + ": " + e.getMessage());
+                        } finally {
+                            if (write) {
+                                writeOrder.finish(writeKey);
+                            }
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    if (write) {
+                        writeOrder.finish(writeKey);
+                    }
+                    inFlight.release();
+                    LOGGER.log(Level.WARNING, "Node: " + id + " closing connection from " + clientSocket.getInetAddress() + ": command rejected");
+                    return;
+                }
+            }
+        } finally {
+            // answer what was already sent before closing
+            inFlight.acquire(Parameters.MAX_IN_FLIGHT_COMMANDS);
+        }
+    }
+
+    /**
+     * The bytes to send back in the protocol the command came in.
+     */
+    private ByteBuffer respond(CommandHandler commandHandler, CommandPostHandler commandPostHandler, Command command, Object from) {
+        if (command.binary() != null) {
+            return handleBinaryCommand(commandHandler, commandPostHandler, command.binary(), from);
+        }
+        // every command gets a response line, so the client knows where the next response starts
+        String response = handleCommand(commandHandler, commandPostHandler, command.text(), from);
+        return ByteBuffer.wrap((response + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String handleCommand(CommandHandler commandHandler, CommandPostHandler commandPostHandler, String operationRaw, Object from) {
+        LOGGER.log(Level.INFO, "Node: " + id + " received command: " + Parameters.maxLogOperationLength(operationRaw) + " from " + from);
+        try {
+            String response = commandHandler.handleCommand(operationRaw);
+            commandPostHandler.accept(Command.ofText(operationRaw));
+            LOGGER.log(Level.INFO, "Node: " + id + " handled command: " + Parameters.maxLogOperationLength(operationRaw) + " from " + from);
+            return response != null ? response : "OK";
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Node: " + id + " cannot handle command: " + Parameters.maxLogOperationLength(operationRaw) + ", error: " + e.getMessage());
+            return "ERROR";
+        }
+    }
+
+    private ByteBuffer handleBinaryCommand(CommandHandler commandHandler, CommandPostHandler commandPostHandler, ByteBuffer request, Object from) {
+        try {
+            // describing parses the opcode, which may be unknown
+            Command command = Command.ofBinary(request);
+            LOGGER.log(Level.INFO, "Node: " + id + " received command: " + command.describe() + " from " + from);
+            ByteBuffer response = commandHandler.handleBinaryCommand(request.duplicate());
+            commandPostHandler.accept(command);
+            LOGGER.log(Level.INFO, "Node: " + id + " handled command: " + command.describe() + " from " + from);
+            return response;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Node: " + id + " cannot handle command of " + request.remaining() + " bytes from " + from + ", error: " + e.getMessage());
+            return BinaryProtocol.status(BinaryProtocol.Status.ERROR);
+        }
+    }
+
+    public interface CommandPostHandler extends Consumer<Command> {
+        void accept(Command command);
     }
 }
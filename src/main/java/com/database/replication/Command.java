@@ -0,0 +1,76 @@
+package com.database.replication;
+
+import java.nio.ByteBuffer;
+
+import com.database.domain.Parameters;
+import com.database.replication.dto.BinaryProtocol;
+import com.database.replication.dto.OperationTypeDto;
+
+/**
+ * A command as it was received: a line of the text protocol or the body of a {@link BinaryProtocol} frame.
+ */
+public record Command(String text, ByteBuffer binary) {
+
+    public static Command ofText(String operationRaw) {
+        return new Command(operationRaw, null);
+    }
+
+    public static Command ofBinary(ByteBuffer body) {
+        return new Command(null, body);
+    }
+
+    public OperationTypeDto type() {
+        if (binary != null) {
+            return OperationTypeDto.fromCode(binary.get(binary.position()));
+        }
+        int separator = text.indexOf('|');
+        return OperationTypeDto.valueOf(separator < 0 ? text : text.substring(0, separator));
+    }
+
+    /**
+     * Commands that fail to parse are not ordered, they only get an error.
+     */
+    public boolean isWrite() {
+        try {
+            return type().isWrite();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The key of a binary single key write, null for any other write, which is then ordered against all writes.
+     */
+    public Long writeKey() {
+        if (binary == null || binary.remaining() < 2) {
+            return null;
+        }
+        OperationTypeDto type = type();
+        if (type != OperationTypeDto.PUT && type != OperationTypeDto.DEL) {
+            return null;
+        }
+        try {
+            return BinaryProtocol.readLong(binary.duplicate().position(binary.position() + 1));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The command as a binary request frame, encoded from the text if it came as a line.
+     */
+    public ByteBuffer toFrame() {
+        if (binary == null) {
+            return BinaryProtocol.fromText(text);
+        }
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_BYTES + binary.remaining());
+        frame.putInt(binary.remaining()).putInt(0).put(binary.duplicate()).flip();
+        return frame;
+    }
+
+    public String describe() {
+        return binary != null
+                ? type() + " (" + binary.remaining() + " bytes)"
+                : Parameters.maxLogOperationLength(text);
+    }
+}
@@ -1,5 +1,12 @@
 package com.database.replication;
 
+import java.nio.ByteBuffer;
+
 public interface CommandHandler {
     String handleCommand(String operationRaw);
+
+    /**
+     * Handles the body of a binary request frame and returns the whole response frame.
+     */
+    ByteBuffer handleBinaryCommand(ByteBuffer request);
 }
@@ -0,0 +1,447 @@
+package com.database.replication;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.database.replication.dto.BinaryProtocol;
+
+/**
+ * Non-blocking server: a few event loops, each with its own selector and direct read and write buffers,
+ * multiplex all connections, while commands run on a separate pool. A connection therefore costs a few
+ * buffers instead of a thread, and a slow client holds no thread at all.
+ * <p>
+ * The state of a connection is only touched by its event loop; a finished command hands its response back
+ * as a task. The first byte of a connection tells whether it speaks lines or {@link BinaryProtocol} frames.
+ * Lines run one at a time, in order. Frames start in order too, but up to {@code maxInFlightCommands} of them
+ * run at once and are answered as they finish, except that a write waits for the earlier writes of the connection
+ * to its key, see {@link WriteOrder}.
+ * Reading pauses while {@code maxInFlightCommands} commands are queued behind those running.
+ */
+final class EventLoopServer {
+    private static final Logger LOGGER = Logger.getLogger(EventLoopServer.class.getName());
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+    // a batch as a line takes about as many bytes as in a frame
+    private static final int MAX_LINE_BYTES = BinaryProtocol.MAX_FRAME_BYTES;
+    private static final long IDLE_CHECK_MILLIS = 1_000;
+
+    private final String id;
+    private final NodeAddress address;
+    private final ExecutorService commandExecutor;
+    // command and remote address to the bytes of the response
+    private final BiFunction<Command, Object, ByteBuffer> commandProcessor;
+    private final long idleTimeoutMillis;
+    private final int maxConnections;
+    private final int maxInFlightCommands;
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private volatile boolean running = true;
+    private ServerSocketChannel serverChannel;
+
+    EventLoopServer(String id, NodeAddress address, ExecutorService commandExecutor, int eventLoopThreads,
+            long idleTimeoutMillis, int maxConnections, int maxInFlightCommands,
+            BiFunction<Command, Object, ByteBuffer> commandProcessor
+    ) {
+        this.id = id;
+        this.address = address;
+        this.commandExecutor = commandExecutor;
+        this.commandProcessor = commandProcessor;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxConnections = maxConnections;
+        this.maxInFlightCommands = maxInFlightCommands;
+        this.eventLoops = new EventLoop[eventLoopThreads];
+    }
+
+    /**
+     * Accepts connections on the calling thread and hands them to the event loops in turn, until closed.
+     */
+    void serve() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(address.host(), address.port()), 1024);
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop();
+            Thread.ofPlatform().name(id + "-event-loop-" + i).daemon().start(eventLoops[i]);
+        }
+        int next = 0;
+        try {
+            while (running) {
+                SocketChannel channel = serverChannel.accept();
+                if (connections.incrementAndGet() > maxConnections) {
+                    connections.decrementAndGet();
+                    LOGGER.log(Level.WARNING, "Node " + id + " rejecting connection from " + channel.getRemoteAddress() + ": too many connections");
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                EventLoop eventLoop = eventLoops[next++ % eventLoops.length];
+                eventLoop.execute(() -> eventLoop.register(channel));
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close()
+        }
+    }
+
+    void close() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
+        }
+        for (EventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.selector.wakeup();
+            }
+        }
+    }
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // shared by the connections of this loop, only used within a single read or write
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long lastIdleCheck = System.currentTimeMillis();
+            while (running) {
+                try {
+                    selector.select(IDLE_CHECK_MILLIS);
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "Node " + id + " event loop failed: " + e.getMessage(), e);
+                    break;
+                }
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.write();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        connection.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= IDLE_CHECK_MILLIS) {
+                    lastIdleCheck = now;
+                    for (SelectionKey key : selector.keys()) {
+                        ((Connection) key.attachment()).closeIfIdle(now);
+                    }
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
+            }
+        }
+
+        void register(SocketChannel channel) {
+            Connection connection = new Connection(this, channel);
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private enum Protocol {
+        TEXT,
+        BINARY
+    }
+
+    private record QueuedCommand(int requestId, Command command, boolean write, Long writeKey) {
+        QueuedCommand(int requestId, Command command) {
+            this(requestId, command, command.isWrite(), command.isWrite() ? command.writeKey() : null);
+        }
+    }
+
+    private final class Connection {
+        private final EventLoop eventLoop;
+        private final SocketChannel channel;
+        private final Object remoteAddress;
+        private final Queue<QueuedCommand> commands = new ArrayDeque<>();
+        private final Queue<ByteBuffer> responses = new ArrayDeque<>();
+        private final ByteBuffer frameHeader = ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_BYTES);
+        private final WriteOrder writeOrder = new WriteOrder();
+        private SelectionKey key;
+        // unknown until the first byte arrives
+        private Protocol protocol;
+        private byte[] line = new byte[256];
+        private int lineLength;
+        // body of the frame being read, grown as its bytes arrive
+        private ByteBuffer frame;
+        private int frameLength;
+        private int requestId;
+        private int inFlight;
+        private boolean inputClosed;
+        private boolean closed;
+        private long lastActivity = System.currentTimeMillis();
+
+        Connection(EventLoop eventLoop, SocketChannel channel) {
+            this.eventLoop = eventLoop;
+            this.channel = channel;
+            Object remote;
+            try {
+                remote = channel.getRemoteAddress();
+            } catch (IOException e) {
+                remote = "unknown";
+            }
+            this.remoteAddress = remote;
+        }
+
+        void read() throws IOException {
+            ByteBuffer buffer = eventLoop.readBuffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                // answer what was already sent before closing
+                inputClosed = true;
+            }
+            buffer.flip();
+            lastActivity = System.currentTimeMillis();
+            if (protocol == null && buffer.hasRemaining()) {
+                if ((buffer.get(buffer.position()) & 0xFF) == BinaryProtocol.MAGIC) {
+                    buffer.get();
+                    protocol = Protocol.BINARY;
+                } else {
+                    protocol = Protocol.TEXT;
+                }
+            }
+            if (protocol == Protocol.BINARY) {
+                readFrames(buffer);
+            } else {
+                readLines(buffer);
+            }
+            dispatch();
+            updateInterest();
+        }
+
+        private void readLines(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                    commands.add(new QueuedCommand(0, Command.ofText(new String(line, 0, length, StandardCharsets.UTF_8))));
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) {
+                        if (lineLength == MAX_LINE_BYTES) {
+                            throw new IOException("Line longer than " + MAX_LINE_BYTES + " bytes");
+                        }
+                        line = Arrays.copyOf(line, Math.min(2 * line.length, MAX_LINE_BYTES));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+
+        private void readFrames(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (frame == null) {
+                    while (frameHeader.hasRemaining() && buffer.hasRemaining()) {
+                        frameHeader.put(buffer.get());
+                    }
+                    if (frameHeader.hasRemaining()) {
+                        return;
+                    }
+                    frameLength = frameHeader.getInt(0);
+                    requestId = frameHeader.getInt(Integer.BYTES);
+                    frameHeader.clear();
+                    if (frameLength <= 0 || frameLength > BinaryProtocol.MAX_FRAME_BYTES) {
+                        throw new IOException("Invalid frame length " + frameLength);
+                    }
+                    frame = ByteBuffer.allocate(Math.min(frameLength, BinaryProtocol.INITIAL_BODY_BYTES));
+                } else if (!frame.hasRemaining()) {
+                    frame = ByteBuffer.allocate(Math.min(2 * frame.capacity(), frameLength)).put(frame.flip());
+                }
+                int length = Math.min(frame.remaining(), buffer.remaining());
+                frame.put(frame.position(), buffer, buffer.position(), length);
+                frame.position(frame.position() + length);
+                buffer.position(buffer.position() + length);
+                if (frame.position() == frameLength) {
+                    commands.add(new QueuedCommand(requestId, Command.ofBinary(frame.flip())));
+                    frame = null;
+                }
+            }
+        }
+
+        void write() throws IOException {
+            while (!responses.isEmpty()) {
+                ByteBuffer buffer = eventLoop.writeBuffer.clear();
+                for (ByteBuffer response : responses) {
+                    int length = Math.min(response.remaining(), buffer.remaining());
+                    buffer.put(buffer.position(), response, response.position(), length);
+                    buffer.position(buffer.position() + length);
+                    if (!buffer.hasRemaining()) {
+                        break;
+                    }
+                }
+                buffer.flip();
+                int written = channel.write(buffer);
+                lastActivity = System.currentTimeMillis();
+                while (written > 0) {
+                    ByteBuffer response = responses.peek();
+                    int consumed = Math.min(written, response.remaining());
+                    response.position(response.position() + consumed);
+                    written -= consumed;
+                    if (!response.hasRemaining()) {
+                        responses.poll();
+                    }
+                }
+                if (buffer.hasRemaining()) {
+                    // the socket buffer is full, OP_WRITE resumes
+                    break;
+                }
+            }
+            updateInterest();
+        }
+
+        /**
+         * Starts the queued commands in order while there is room. A write waiting for an earlier one holds
+         * back the commands behind it too.
+         */
+        private void dispatch() {
+            int maxInFlight = protocol == Protocol.BINARY ? maxInFlightCommands : 1;
+            while (!commands.isEmpty() && inFlight < maxInFlight) {
+                QueuedCommand command = commands.peek();
+                if (command.write() && !writeOrder.tryStart(command.writeKey())) {
+                    return;
+                }
+                commands.poll();
+                inFlight++;
+                try {
+                    commandExecutor.execute(() -> {
+                        ByteBuffer response = null;
+                        try {
+                            response = commandProcessor.apply(command.command(), remoteAddress);
+                        } catch (Exception e) {
+                            LOGGER.log(Level.WARNING, "Node: " + id + " cannot handle command from " + remoteAddress + ": " + e.getMessage());
+                        } finally {
+                            // every command is answered, or its slot and the commands behind it would be held forever
+                            ByteBuffer answer = response != null ? response : errorResponse();
+                            eventLoop.execute(() -> onResponse(command, answer));
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        private ByteBuffer errorResponse() {
+            return protocol == Protocol.BINARY
+                    ? BinaryProtocol.status(BinaryProtocol.Status.ERROR)
+                    : ByteBuffer.wrap("ERROR\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void onResponse(QueuedCommand command, ByteBuffer response) {
+            if (closed) {
+                return;
+            }
+            inFlight--;
+            if (command.write()) {
+                writeOrder.finish(command.writeKey());
+            }
+            if (protocol == Protocol.BINARY) {
+                BinaryProtocol.withRequestId(response, command.requestId());
+            }
+            responses.add(response);
+            try {
+                write();
+            } catch (IOException | CancelledKeyException e) {
+                close();
+                return;
+            }
+            dispatch();
+            updateInterest();
+        }
+
+        private void updateInterest() {
+            if (closed) {
+                return;
+            }
+            if (inputClosed && inFlight == 0 && commands.isEmpty() && responses.isEmpty()) {
+                close();
+                return;
+            }
+            int ops = 0;
+            if (!inputClosed && commands.size() < maxInFlightCommands) {
+                ops |= SelectionKey.OP_READ;
+            }
+            if (!responses.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        void closeIfIdle(long now) {
+            if (inFlight == 0 && commands.isEmpty() && responses.isEmpty() && now - lastActivity > idleTimeoutMillis) {
+                LOGGER.log(Level.FINE, "Node: " + id + " closing idle connection from " + remoteAddress);
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.decrementAndGet();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error: " + e.getMessage());
+            }
+        }
+    }
+}
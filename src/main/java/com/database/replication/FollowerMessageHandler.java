@@ -1,6 +1,9 @@
 package com.database.replication;
 
+import java.nio.ByteBuffer;
+
 import com.database.domain.ReadStorageProxy;
+import com.database.replication.dto.BinaryProtocol;
 import com.database.replication.dto.OperationDto;
 import com.database.replication.dto.OperationTypeDeserializer;
 import com.database.replication.dto.command.GetKeyRangeCommand;
@@ -33,4 +36,16 @@ public class FollowerMessageHandler implements CommandHandler {
         };
     }
 
+    @Override
+    public ByteBuffer handleBinaryCommand(ByteBuffer request) {
+        return switch (BinaryProtocol.readType(request)) {
+            case GET -> BinaryProtocol.keyValue(readStorageProxy.read(BinaryProtocol.readLong(request)));
+            case GET_RANGE -> {
+                long from = BinaryProtocol.readLong(request);
+                long to = BinaryProtocol.readLong(request);
+                yield BinaryProtocol.keyValues(readStorageProxy.readRange(from, to));
+            }
+            default -> BinaryProtocol.status(BinaryProtocol.Status.UNEXPECTED_COMMAND);
+        };
+    }
 }
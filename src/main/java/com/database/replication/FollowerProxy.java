@@ -1,11 +1,13 @@
 package com.database.replication;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.database.domain.KeyValueEntry;
 import com.database.domain.LSMTree;
+import com.database.domain.RangeIterator;
 import com.database.domain.ReadStorageProxy;
 import com.database.replication.dto.response.ResponseManyKeysValuesDto;
 import com.database.replication.dto.response.ResponseSingleKeyValueDto;
@@ -29,11 +31,10 @@ public class FollowerProxy implements ReadStorageProxy {
     @Override
     public ResponseManyKeysValuesDto readRange(Long from, Long to) {
         LOGGER.log(Level.INFO, "FollowerProxy: GET_RANGE " + from + " : " + to);
-        List<KeyValueEntry> entries = lsmTree.readRange(from, to);
-        return new ResponseManyKeysValuesDto(
-                entries.stream()
-                        .map(kv -> new ResponseManyKeysValuesDto.KeyValue(kv.key(), kv.value()))
-                        .toList()
-        );
+        List<ResponseManyKeysValuesDto.KeyValue> keyValues = new ArrayList<>();
+        try (RangeIterator entries = lsmTree.scan(from, to)) {
+            entries.forEachRemaining(kv -> keyValues.add(new ResponseManyKeysValuesDto.KeyValue(kv.key(), kv.value())));
+        }
+        return new ResponseManyKeysValuesDto(keyValues);
     }
 }
@@ -1,9 +1,12 @@
 package com.database.replication;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.database.domain.KeyValueEntry;
 import com.database.domain.WriteStorageProxy;
+import com.database.replication.dto.BinaryProtocol;
 import com.database.replication.dto.OperationDto;
 import com.database.replication.dto.OperationTypeDeserializer;
 import com.database.replication.dto.command.DelSingleKeyCommand;
@@ -48,4 +51,34 @@ public class LeaderMessageHandler implements CommandHandler {
             default -> "UNEXPECTED_COMMAND";
         };
     }
+
+    @Override
+    public ByteBuffer handleBinaryCommand(ByteBuffer request) {
+        return switch (BinaryProtocol.readType(request)) {
+            case HEARTBEAT -> BinaryProtocol.ok();
+            case PUT -> {
+                writeStorageProxy.put(
+                        new KeyValueEntry(
+                                BinaryProtocol.readLong(request),
+                                BinaryProtocol.readString(request)
+                        )
+                );
+                yield BinaryProtocol.ok();
+            }
+            case BATCH_PUT -> {
+                int count = BinaryProtocol.readCount(request);
+                List<KeyValueEntry> keyValueEntries = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    keyValueEntries.add(new KeyValueEntry(BinaryProtocol.readLong(request), BinaryProtocol.readString(request)));
+                }
+                writeStorageProxy.batchPut(keyValueEntries);
+                yield BinaryProtocol.ok();
+            }
+            case DEL -> {
+                writeStorageProxy.delete(BinaryProtocol.readLong(request));
+                yield BinaryProtocol.ok();
+            }
+            default -> BinaryProtocol.status(BinaryProtocol.Status.UNEXPECTED_COMMAND);
+        };
+    }
 }
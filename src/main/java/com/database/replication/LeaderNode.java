@@ -1,10 +1,7 @@
 package com.database.replication;
 
-import static com.database.domain.Parameters.NUM_OF_THREADS_FOR_LEADER_MESSAGES;
-
 import java.util.Collection;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -21,7 +18,7 @@ public final class LeaderNode {
     private Collection<NodeAddressWithId> replicaNodes;
 
     public LeaderNode(String id, NodeAddress clientAddress) {
-        ExecutorService leaderExecutor = Executors.newFixedThreadPool(NUM_OF_THREADS_FOR_LEADER_MESSAGES);
+        ExecutorService leaderExecutor = Parameters.executorServiceForConnections(Parameters.MAX_CLIENT_CONNECTIONS);
         this.node = new ClientHandler("node-" + id, clientAddress, NodeRole.LEADER, leaderExecutor);
         this.lsmTree = new LSMTree("data_node_" + id);
     }
@@ -42,10 +39,10 @@ public final class LeaderNode {
 
     private void run() {
         LeaderMessageHandler leaderMessageHandler = new LeaderMessageHandler(new LeaderProxy(lsmTree));
-        node.consumeCommand(leaderMessageHandler, operationRaw -> broadcaster.broadcast(operationRaw));
+        node.consumeCommand(leaderMessageHandler, command -> broadcaster.broadcast(command));
     }
 
     private void sendHeartbeat() {
-        broadcaster.broadcast(new OperationDto(OperationTypeDto.HEARTBEAT, "empty").serialize());
+        broadcaster.broadcast(Command.ofText(new OperationDto(OperationTypeDto.HEARTBEAT, "empty").serialize()));
     }
 }
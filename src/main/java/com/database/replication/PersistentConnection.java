@@ -0,0 +1,99 @@
+package com.database.replication;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Line based request/response connection to a node, opened on first use and kept open for the following
+ * requests. Requests are sent one at a time. A request failing on a connection that was reused is retried
+ * once on a new one, since the node may have closed it for being idle; every command is idempotent.
+ */
+public class PersistentConnection implements AutoCloseable {
+    private final NodeAddress address;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private Socket socket;
+    private BufferedReader in;
+    private BufferedWriter out;
+
+    public PersistentConnection(NodeAddress address) {
+        this.address = address;
+    }
+
+    public NodeAddress address() {
+        return address;
+    }
+
+    public String send(String request) throws IOException {
+        lock.lock();
+        try {
+            boolean reused = socket != null;
+            try {
+                return exchange(request);
+            } catch (IOException e) {
+                disconnect();
+                if (!reused) {
+                    throw e;
+                }
+                return exchange(request);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            disconnect();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String exchange(String request) throws IOException {
+        if (socket == null) {
+            connect();
+        }
+        try {
+            out.write(request);
+            out.newLine();
+            out.flush();
+            String response = in.readLine();
+            if (response == null) {
+                throw new EOFException("Connection to " + address + " closed");
+            }
+            return response;
+        } catch (IOException e) {
+            disconnect();
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket(address.host(), address.port());
+        socket.setTcpNoDelay(true);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // the connection is dropped anyway
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+}
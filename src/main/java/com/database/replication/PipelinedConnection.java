@@ -0,0 +1,226 @@
+package com.database.replication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.database.domain.Parameters;
+import com.database.replication.dto.BinaryProtocol;
+
+/**
+ * {@link BinaryProtocol} connection to a node, opened on first use and kept open, on which any number of requests
+ * can be in flight. Each request gets an id; a reader thread completes the future of a request when the response
+ * with its id arrives, in whatever order the node answers. When the connection breaks, the requests in flight
+ * fail, or are retried once on a new connection if they were sent on a reused one, since the node may have
+ * closed it for being idle; every command is idempotent. A request that gets no response within
+ * {@link Parameters#REQUEST_TIMEOUT_MILLIS} fails with a {@link TimeoutException} and is not retried.
+ * <p>
+ * Futures complete on the reader thread, whatever depends on them must not wait for another response of the
+ * same connection there.
+ */
+public class PipelinedConnection implements AutoCloseable {
+    private final NodeAddress address;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int nextRequestId;
+    private Link link;
+    private boolean closed;
+
+    public PipelinedConnection(NodeAddress address) {
+        this.address = address;
+    }
+
+    public NodeAddress address() {
+        return address;
+    }
+
+    /**
+     * Sends a request frame and waits for the body of its response frame.
+     */
+    public ByteBuffer send(ByteBuffer requestFrame) throws IOException {
+        try {
+            return sendAsync(requestFrame).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + address);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                throw new SocketTimeoutException("No response from " + address + " within " + Parameters.REQUEST_TIMEOUT_MILLIS + " ms");
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Sends a request frame without waiting, the future completes with the body of its response frame.
+     * The frame is not modified, so one frame can be sent on several connections.
+     */
+    public CompletableFuture<ByteBuffer> sendAsync(ByteBuffer requestFrame) {
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        response.orTimeout(Parameters.REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        lock.lock();
+        try {
+            submit(new Request(requestFrame, response, link != null));
+        } finally {
+            lock.unlock();
+        }
+        return response;
+    }
+
+    /**
+     * Fails the requests in flight and all later ones.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            if (link != null) {
+                link.close(new EOFException("Connection to " + address + " closed"));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Has to be called with the lock held, which keeps the frames of concurrent requests apart and gives them
+     * ids in the order they are sent.
+     */
+    private void submit(Request request) {
+        if (closed) {
+            request.response().completeExceptionally(new IOException("Connection to " + address + " is closed"));
+            return;
+        }
+        Link current = link;
+        try {
+            if (current == null) {
+                current = new Link();
+                link = current;
+            }
+        } catch (IOException e) {
+            request.response().completeExceptionally(e);
+            return;
+        }
+        int requestId = nextRequestId++;
+        Map<Integer, Request> pending = current.pending;
+        pending.put(requestId, request);
+        // a late response finds nothing to complete and is dropped
+        request.response().whenComplete((body, e) -> pending.remove(requestId, request));
+        try {
+            current.write(request.frame(), requestId);
+        } catch (IOException e) {
+            // fails or retries the request along with the others in flight
+            current.close(e);
+        }
+    }
+
+    /**
+     * A request sent on a reused connection is retried once if that connection breaks.
+     */
+    private record Request(ByteBuffer frame, CompletableFuture<ByteBuffer> response, boolean retry) {}
+
+    /**
+     * One socket with the requests waiting for a response on it.
+     */
+    private final class Link {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final Map<Integer, Request> pending = new ConcurrentHashMap<>();
+
+        Link() throws IOException {
+            socket = new Socket(address.host(), address.port());
+            try {
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                // sent along with the first request
+                out.write(BinaryProtocol.MAGIC);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            Thread.ofVirtual().name("connection-" + address.host() + ":" + address.port()).start(this::readResponses);
+        }
+
+        void write(ByteBuffer requestFrame, int requestId) throws IOException {
+            out.writeInt(requestFrame.getInt(requestFrame.position()));
+            out.writeInt(requestId);
+            out.write(requestFrame.array(), requestFrame.arrayOffset() + requestFrame.position() + BinaryProtocol.FRAME_HEADER_BYTES,
+                    requestFrame.remaining() - BinaryProtocol.FRAME_HEADER_BYTES);
+            out.flush();
+        }
+
+        private void readResponses() {
+            try {
+                while (true) {
+                    int length = in.readInt();
+                    int requestId = in.readInt();
+                    byte[] response = BinaryProtocol.readBody(in, length);
+                    Request request = pending.remove(requestId);
+                    if (request != null) {
+                        request.response().complete(ByteBuffer.wrap(response));
+                    }
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        /**
+         * Once the link is no longer the current one no request joins {@code pending}. The requests still in it
+         * are taken in the order they were sent: those to retry are sent again on a new link before the lock
+         * lets any later request through, so a retried write never overtakes a later one; the others fail, in
+         * that order too.
+         */
+        void close(IOException cause) {
+            lock.lock();
+            try {
+                if (link == this) {
+                    link = null;
+                }
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // the connection is dropped anyway
+                }
+                List<Integer> requestIds = new ArrayList<>(pending.keySet());
+                // in sending order, also once the ids wrapped around
+                requestIds.sort((a, b) -> Integer.compare(a - b, 0));
+                for (Integer requestId : requestIds) {
+                    Request request = pending.remove(requestId);
+                    if (request == null) {
+                        continue;
+                    }
+                    if (request.retry() && !closed) {
+                        submit(new Request(request.frame(), request.response(), false));
+                    } else {
+                        request.response().completeExceptionally(cause);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -2,15 +2,14 @@ package com.database.replication;
 
 import static com.database.domain.Parameters.MAX_MISSING_ATTEMPTS_TO_START_RE_ELECTION;
 import static com.database.domain.Parameters.MAX_MISSING_HEARTBEATS_TO_START_ELECTION;
-import static com.database.domain.Parameters.NUM_OF_THREADS_FOR_LEADER_MESSAGES;
-import static com.database.domain.Parameters.NUM_OF_THREADS_FOR_REPLICA_MESSAGES;
+import static com.database.domain.Parameters.MAX_CLIENT_CONNECTIONS;
+import static com.database.domain.Parameters.MAX_SYNC_CONNECTIONS;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -47,8 +46,8 @@ public final class ReplicaNode {
         this.nodeRole = NodeRole.FOLLOWER;
         this.syncAddress = syncAddress;
         this.clientAddress = clientAddress;
-        this.replicaExecutor = Executors.newFixedThreadPool(NUM_OF_THREADS_FOR_REPLICA_MESSAGES);
-        this.leaderExecutor = Executors.newFixedThreadPool(NUM_OF_THREADS_FOR_LEADER_MESSAGES);
+        this.replicaExecutor = Parameters.executorServiceForConnections(MAX_CLIENT_CONNECTIONS);
+        this.leaderExecutor = Parameters.executorServiceForConnections(MAX_SYNC_CONNECTIONS);
         this.clientNode = new ClientHandler("node-" + id, clientAddress, nodeRole, replicaExecutor);
         this.syncNode = new ClientHandler("sync-node-" + id, syncAddress, nodeRole, leaderExecutor);
         this.lsmTree = new LSMTree("data_node_" + id);
@@ -93,13 +92,12 @@ public final class ReplicaNode {
 
     private void handleClientCommandsAsLeader() {
         LeaderMessageHandler leaderMessageHandler = new LeaderMessageHandler(new LeaderProxy(lsmTree));
-        clientNode.consumeCommand(leaderMessageHandler, operationRaw -> broadcaster.broadcast(operationRaw));
+        clientNode.consumeCommand(leaderMessageHandler, command -> broadcaster.broadcast(command));
     }
 
     private CommandPostHandler markHeartbeatAsSuccessful() {
-        return operationRaw -> {
-            OperationDto deserialized = OperationDto.deserialize(operationRaw);
-            if (deserialized.type().equals(OperationTypeDto.HEARTBEAT)) {
+        return command -> {
+            if (command.type().equals(OperationTypeDto.HEARTBEAT)) {
                 missingHeartbeatCounter.set(0);
             }
         };
@@ -162,13 +160,13 @@ public final class ReplicaNode {
         syncNode.stopConsuming();
 
         this.nodeRole = NodeRole.LEADER;
-        this.clientNode = new ClientHandler("leader-node", clientAddress, NodeRole.LEADER, this.leaderExecutor);
+        this.clientNode = new ClientHandler("leader-node", clientAddress, NodeRole.LEADER, this.replicaExecutor);
 
         this.start();
     }
 
     private void sendHeartbeat() {
-        broadcaster.broadcast(new OperationDto(OperationTypeDto.HEARTBEAT, "empty").serialize());
+        broadcaster.broadcast(Command.ofText(new OperationDto(OperationTypeDto.HEARTBEAT, "empty").serialize()));
     }
 
 }
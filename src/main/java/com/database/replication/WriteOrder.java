@@ -0,0 +1,63 @@
+package com.database.replication;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the writes of one connection to the same key in the order they were sent, while writes to other keys
+ * run side by side. A write of several keys, given as a null key, waits for all writes before it and holds
+ * back all writes after it.
+ */
+final class WriteOrder {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+    private final Set<Long> keys = new HashSet<>();
+    private int writes;
+    private boolean allKeys;
+
+    boolean tryStart(Long key) {
+        lock.lock();
+        try {
+            if (allKeys || (key == null ? writes > 0 : keys.contains(key))) {
+                return false;
+            }
+            writes++;
+            if (key == null) {
+                allKeys = true;
+            } else {
+                keys.add(key);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void start(Long key) throws InterruptedException {
+        lock.lock();
+        try {
+            while (!tryStart(key)) {
+                finished.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finish(Long key) {
+        lock.lock();
+        try {
+            writes--;
+            if (key == null) {
+                allKeys = false;
+            } else {
+                keys.remove(key);
+            }
+            finished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.database.replication.dto;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.database.replication.dto.command.DelSingleKeyCommand;
+import com.database.replication.dto.command.GetKeyRangeCommand;
+import com.database.replication.dto.command.GetSingleKeyCommand;
+import com.database.replication.dto.command.PutManyKeysValuesCommand;
+import com.database.replication.dto.command.PutSingleKeyValueCommand;
+import com.database.replication.dto.response.ResponseManyKeysValuesDto;
+import com.database.replication.dto.response.ResponseSingleKeyValueDto;
+
+/**
+ * Binary alternative to the line protocol, chosen by a client sending {@link #MAGIC} as the first byte of a
+ * connection. Afterwards both sides exchange frames: length | request id | body, both big-endian ints, the length
+ * that of the body. A request body is opcode | fields, a response body is status | fields. A response carries the
+ * id of its request, so a client can have many requests in flight and match the responses, which come in any
+ * order. Keys are zigzag varints, counts and value lengths varints, values UTF-8 bytes, so values may contain any
+ * character and nothing has to be escaped or split.
+ * <pre>
+ * GET        key                       OK: key, value
+ * PUT        key, value                OK
+ * DEL        key                       OK
+ * BATCH_PUT  count, (key, value)*      OK
+ * GET_RANGE  from, to                  OK: count, (key, value)*
+ * HEARTBEAT                            OK
+ * </pre>
+ * A value is its length followed by its bytes. Decoding reads the fields straight from the frame, only the
+ * values become objects.
+ */
+public final class BinaryProtocol {
+    // no command of the line protocol starts with it, it is not even ASCII
+    public static final int MAGIC = 0xB1;
+    // twice a full memtable, no batch or range of a real workload comes close
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+    // bodies are read into a buffer of this size, grown as more bytes arrive
+    public static final int INITIAL_BODY_BYTES = 64 * 1024;
+    public static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+
+    public enum Status {
+        OK(0),
+        ERROR(1),
+        UNEXPECTED_COMMAND(2);
+
+        private final byte code;
+
+        Status(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte code() {
+            return code;
+        }
+
+        public static Status fromCode(byte code) {
+            for (Status status : values()) {
+                if (status.code == code) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("Unknown status " + code);
+        }
+    }
+
+    private BinaryProtocol() {
+    }
+
+    public static FrameWriter request(OperationTypeDto type) {
+        return new FrameWriter(32).writeByte(type.code());
+    }
+
+    public static ByteBuffer get(long key) {
+        return request(OperationTypeDto.GET).writeLong(key).frame();
+    }
+
+    public static ByteBuffer put(long key, String value) {
+        return request(OperationTypeDto.PUT).writeLong(key).writeString(value).frame();
+    }
+
+    public static ByteBuffer delete(long key) {
+        return request(OperationTypeDto.DEL).writeLong(key).frame();
+    }
+
+    public static ByteBuffer getRange(long from, long to) {
+        return request(OperationTypeDto.GET_RANGE).writeLong(from).writeLong(to).frame();
+    }
+
+    public static ByteBuffer heartbeat() {
+        return request(OperationTypeDto.HEARTBEAT).frame();
+    }
+
+    /**
+     * Encodes a command of the line protocol, for forwarding it over a binary connection.
+     */
+    public static ByteBuffer fromText(String operationRaw) {
+        OperationDto operation = OperationDto.deserialize(operationRaw);
+        return switch (operation.type()) {
+            case GET -> {
+                GetSingleKeyCommand command = OperationTypeDeserializer.GET.deserialize(operation.data());
+                yield get(command.key());
+            }
+            case PUT -> {
+                PutSingleKeyValueCommand command = OperationTypeDeserializer.PUT.deserialize(operation.data());
+                yield put(command.key(), command.value());
+            }
+            case DEL -> {
+                DelSingleKeyCommand command = OperationTypeDeserializer.DEL.deserialize(operation.data());
+                yield delete(command.key());
+            }
+            case BATCH_PUT -> {
+                PutManyKeysValuesCommand command = OperationTypeDeserializer.BATCH_PUT.deserialize(operation.data());
+                FrameWriter writer = request(OperationTypeDto.BATCH_PUT).writeCount(command.keyValues().size());
+                for (PutManyKeysValuesCommand.KeyValue keyValue : command.keyValues()) {
+                    writer.writeLong(keyValue.key()).writeString(keyValue.value());
+                }
+                yield writer.frame();
+            }
+            case GET_RANGE -> {
+                GetKeyRangeCommand command = OperationTypeDeserializer.GET_RANGE.deserialize(operation.data());
+                yield getRange(command.from(), command.to());
+            }
+            case HEARTBEAT -> heartbeat();
+        };
+    }
+
+    public static ByteBuffer status(Status status) {
+        return new FrameWriter(1).writeByte(status.code()).frame();
+    }
+
+    public static ByteBuffer ok() {
+        return status(Status.OK);
+    }
+
+    public static ByteBuffer keyValue(ResponseSingleKeyValueDto keyValue) {
+        return new FrameWriter(32).writeByte(Status.OK.code())
+                .writeLong(keyValue.key())
+                .writeString(keyValue.value())
+                .frame();
+    }
+
+    public static ByteBuffer keyValues(ResponseManyKeysValuesDto keyValues) {
+        FrameWriter writer = new FrameWriter(16 + 32 * keyValues.keyValues().size())
+                .writeByte(Status.OK.code())
+                .writeCount(keyValues.keyValues().size());
+        for (ResponseManyKeysValuesDto.KeyValue keyValue : keyValues.keyValues()) {
+            writer.writeLong(keyValue.key()).writeString(keyValue.value());
+        }
+        return writer.frame();
+    }
+
+    /**
+     * Sets the request id of a frame built by a {@link FrameWriter}.
+     */
+    public static ByteBuffer withRequestId(ByteBuffer frame, int requestId) {
+        frame.putInt(frame.position() + Integer.BYTES, requestId);
+        return frame;
+    }
+
+    /**
+     * Reads a body of the given length, growing the array only as bytes arrive, so a header announcing a large
+     * frame costs nothing until its body is actually sent.
+     */
+    public static byte[] readBody(DataInput in, int length) throws IOException {
+        if (length <= 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] body = new byte[Math.min(length, INITIAL_BODY_BYTES)];
+        int read = 0;
+        while (read < length) {
+            if (read == body.length) {
+                body = Arrays.copyOf(body, Math.min(2 * body.length, length));
+            }
+            in.readFully(body, read, body.length - read);
+            read = body.length;
+        }
+        return body;
+    }
+
+    public static OperationTypeDto readType(ByteBuffer body) {
+        return OperationTypeDto.fromCode(body.get());
+    }
+
+    public static Status readStatus(ByteBuffer body) {
+        return Status.fromCode(body.get());
+    }
+
+    public static ResponseSingleKeyValueDto readKeyValue(ByteBuffer body) {
+        return new ResponseSingleKeyValueDto(readLong(body), readString(body));
+    }
+
+    public static ResponseManyKeysValuesDto readKeyValues(ByteBuffer body) {
+        int count = readCount(body);
+        List<ResponseManyKeysValuesDto.KeyValue> keyValues = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keyValues.add(new ResponseManyKeysValuesDto.KeyValue(readLong(body), readString(body)));
+        }
+        return new ResponseManyKeysValuesDto(keyValues);
+    }
+
+    public static long readLong(ByteBuffer body) {
+        long zigzag = readVarLong(body);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public static int readCount(ByteBuffer body) {
+        long count = readVarLong(body);
+        // every counted item takes at least a byte
+        if (count > body.remaining()) {
+            throw new IllegalArgumentException("Count " + count + " exceeds the frame");
+        }
+        return (int) count;
+    }
+
+    public static String readString(ByteBuffer body) {
+        int length = readCount(body);
+        int offset = body.position();
+        body.position(offset + length);
+        if (body.hasArray()) {
+            return new String(body.array(), body.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        body.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long readVarLong(ByteBuffer body) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = body.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /**
+     * Builds a frame in a growing array, the length is filled in by {@link #frame()}, the request id is left 0.
+     */
+    public static final class FrameWriter {
+        private byte[] bytes;
+        private int size = FRAME_HEADER_BYTES;
+
+        FrameWriter(int bodyCapacity) {
+            this.bytes = new byte[FRAME_HEADER_BYTES + bodyCapacity];
+        }
+
+        public FrameWriter writeByte(byte b) {
+            ensureCapacity(1);
+            bytes[size++] = b;
+            return this;
+        }
+
+        public FrameWriter writeLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+            return this;
+        }
+
+        public FrameWriter writeCount(int count) {
+            writeVarLong(count);
+            return this;
+        }
+
+        public FrameWriter writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+            return this;
+        }
+
+        public ByteBuffer frame() {
+            ByteBuffer frame = ByteBuffer.wrap(bytes, 0, size);
+            frame.putInt(0, size - FRAME_HEADER_BYTES);
+            return frame;
+        }
+
+        private void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + additional));
+            }
+        }
+    }
+}
@@ -1,11 +1,38 @@
 package com.database.replication.dto;
 
 public enum OperationTypeDto {
-    GET,
-    PUT,
-    DEL,
-    BATCH_PUT,
-    GET_RANGE,
+    GET(1),
+    PUT(2),
+    DEL(3),
+    BATCH_PUT(4),
+    GET_RANGE(5),
 
-    HEARTBEAT
+    HEARTBEAT(6);
+
+    // opcode of the binary protocol
+    private final byte code;
+
+    OperationTypeDto(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte code() {
+        return code;
+    }
+
+    /**
+     * Writes of a connection to the same key have to apply in the order they were sent, reads may run side by side.
+     */
+    public boolean isWrite() {
+        return this == PUT || this == DEL || this == BATCH_PUT;
+    }
+
+    public static OperationTypeDto fromCode(byte code) {
+        for (OperationTypeDto type : values()) {
+            if (type.code == code) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation type " + code);
+    }
 }
@@ -0,0 +1,117 @@
+package com.database.domain;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.database.domain.heuristic.CacheStats;
+import com.database.domain.heuristic.LongKeyCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BlockCachedSegmentSourceTest {
+    private static final int BLOCK_BYTES = 64;
+
+    private final byte[] bytes = new byte[10 * BLOCK_BYTES + 17];
+    private final LongKeyCache<byte[]> blockCache = new LongKeyCache<>(1 << 20, 1, block -> block.length);
+
+    BlockCachedSegmentSourceTest() {
+        new Random(42).nextBytes(bytes);
+    }
+
+    @Test
+    void returnsTheBytesOfTheSourceForAnyRange() {
+        CountingSource source = new CountingSource(bytes);
+        BlockCachedSegmentSource cached = new BlockCachedSegmentSource(source, 1, blockCache, BLOCK_BYTES);
+        Random random = new Random(7);
+
+        for (int i = 0; i < 2_000; i++) {
+            int position = random.nextInt(bytes.length);
+            int length = random.nextInt(Math.min(3 * BLOCK_BYTES, bytes.length - position) + 1);
+
+            assertEquals(ByteBuffer.wrap(bytes, position, length), cached.read(position, length, random.nextBoolean()));
+        }
+        assertEquals(ByteBuffer.wrap(bytes, 5 * BLOCK_BYTES - 4, 8).getLong(), cached.readLong(5 * BLOCK_BYTES - 4));
+        assertEquals(ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt(), cached.readInt(bytes.length - 4));
+    }
+
+    @Test
+    void readsEveryBlockFromTheSourceOnce() {
+        CountingSource source = new CountingSource(bytes);
+        BlockCachedSegmentSource cached = new BlockCachedSegmentSource(source, 1, blockCache, BLOCK_BYTES);
+
+        for (int round = 0; round < 3; round++) {
+            for (int position = 0; position < bytes.length; position += 8) {
+                cached.read(position, Math.min(8, bytes.length - position));
+            }
+        }
+
+        // ten full blocks and the partial last one
+        assertEquals(11, source.reads);
+    }
+
+    @Test
+    void aReadNotFillingTheCacheStillUsesTheCachedBlocks() {
+        CountingSource source = new CountingSource(bytes);
+        BlockCachedSegmentSource cached = new BlockCachedSegmentSource(source, 1, blockCache, BLOCK_BYTES);
+        cached.read(0, 8);
+        source.reads = 0;
+
+        cached.read(8, 8, false);
+        cached.read(BLOCK_BYTES, 8, false);
+        cached.read(BLOCK_BYTES, 8, false);
+
+        assertEquals(2, source.reads);
+        assertEquals(new CacheStats(1, 3), blockCache.stats());
+    }
+
+    @Test
+    void keepsTheBlocksOfSegmentsApart() {
+        byte[] other = new byte[bytes.length];
+        BlockCachedSegmentSource first =
+                new BlockCachedSegmentSource(new CountingSource(bytes), 1, blockCache, BLOCK_BYTES);
+        BlockCachedSegmentSource second =
+                new BlockCachedSegmentSource(new CountingSource(other), 2, blockCache, BLOCK_BYTES);
+
+        first.read(0, 16);
+
+        assertEquals(ByteBuffer.wrap(other, 0, 16), second.read(0, 16));
+        assertEquals(ByteBuffer.wrap(bytes, 0, 16), first.read(0, 16));
+    }
+
+    private static final class CountingSource implements SegmentSource {
+        private final byte[] bytes;
+        private int reads;
+
+        CountingSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public long readLong(long position) {
+            return read(position, Long.BYTES).getLong(0);
+        }
+
+        @Override
+        public int readInt(long position) {
+            return read(position, Integer.BYTES).getInt(0);
+        }
+
+        @Override
+        public ByteBuffer read(long position, int length) {
+            reads++;
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, (int) position, copy, 0, length);
+            return ByteBuffer.wrap(copy);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.database.domain;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactionSchedulerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void picksAgainForARequestMadeAfterTheLastPick() throws InterruptedException {
+        AtomicInteger picks = new AtomicInteger();
+        CountDownLatch pickedAgain = new CountDownLatch(1);
+        CompactionScheduler[] scheduler = new CompactionScheduler[1];
+        scheduler[0] = new CompactionScheduler(storage(), policy(() -> {
+            if (picks.incrementAndGet() == 1) {
+                // a flush finishing while the run is about to end
+                scheduler[0].maybeScheduleCompaction();
+            } else {
+                pickedAgain.countDown();
+            }
+        }));
+
+        scheduler[0].maybeScheduleCompaction();
+
+        assertTrue(pickedAgain.await(10, TimeUnit.SECONDS));
+        scheduler[0].close();
+    }
+
+    @Test
+    void closeWaitsForTheRunningRunAndStartsNoOther() throws InterruptedException {
+        AtomicInteger picks = new AtomicInteger();
+        CountDownLatch picking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompactionScheduler scheduler = new CompactionScheduler(storage(), policy(() -> {
+            picks.incrementAndGet();
+            picking.countDown();
+            await(release);
+        }));
+        scheduler.maybeScheduleCompaction();
+        assertTrue(picking.await(10, TimeUnit.SECONDS));
+
+        Thread closing = Thread.ofPlatform().start(scheduler::close);
+        closing.join(200);
+        assertTrue(closing.isAlive());
+        release.countDown();
+        closing.join(10_000);
+
+        assertFalse(closing.isAlive());
+        scheduler.maybeScheduleCompaction();
+        assertEquals(1, picks.get());
+    }
+
+    private PersistentStorage storage() {
+        return new PersistentStorage(directory.toString());
+    }
+
+    /**
+     * Never picks a compaction, running the given action on every pick.
+     */
+    private static CompactionPolicy policy(Runnable onPick) {
+        return new CompactionPolicy() {
+            @Override
+            public Optional<Compaction> pickCompaction(List<Segment> segments) {
+                onPick.run();
+                return Optional.empty();
+            }
+
+            @Override
+            public String name() {
+                return "test";
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.database.domain;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KeyValueEntryTest {
+    @ParameterizedTest
+    @ValueSource(strings = {"", "ascii", "zażółć", "€uro", "emoji 😀 pair", "߿ࠀ￿"})
+    void countsTheBytesOfTheValueEncodedAsUtf8(String value) {
+        assertEquals(value.getBytes(StandardCharsets.UTF_8).length, new KeyValueEntry(1L, value).valueBytes());
+    }
+}
@@ -0,0 +1,126 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Closing a tree leaves the writes of its active memtable to the log alone, so reopening the directory
+ * recovers them the way a restart after a crash does.
+ */
+class LSMTreeRecoveryTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversTheWritesOfTheLog() {
+        LSMTree tree = new LSMTree(directory.toString());
+        tree.put(new KeyValueEntry(1L, "one"));
+        tree.put(new KeyValueEntry(2L, "two"));
+        tree.delete(2L);
+        tree.batchPut(List.of(new KeyValueEntry(3L, "three"), new KeyValueEntry(4L, "four|with,separators:")));
+        tree.put(new KeyValueEntry(1L, "one again"));
+        tree.close();
+
+        LSMTree recovered = new LSMTree(directory.toString());
+
+        assertEquals("one again", recovered.read(1L).value());
+        assertEquals(KeyValueEntry.EMPTY_VALUE, recovered.read(2L).value());
+        assertEquals("three", recovered.read(3L).value());
+        assertEquals("four|with,separators:", recovered.read(4L).value());
+        assertEquals(List.of("1:one again", "3:three", "4:four|with,separators:"),
+                describe(recovered.readRange(0L, 10L)));
+        recovered.close();
+    }
+
+    @Test
+    void recoversAgainAfterTheRecoveredLogWasFlushed() {
+        LSMTree tree = new LSMTree(directory.toString());
+        tree.put(new KeyValueEntry(1L, "one"));
+        tree.close();
+        LSMTree reopened = new LSMTree(directory.toString());
+        reopened.put(new KeyValueEntry(2L, "two"));
+        // waits for the flush of the recovered log, only the log of the second write is left
+        reopened.close();
+        assertEquals(1, logs().length);
+
+        LSMTree recovered = new LSMTree(directory.toString());
+
+        assertEquals("one", recovered.read(1L).value());
+        assertEquals("two", recovered.read(2L).value());
+        recovered.close();
+    }
+
+    @Test
+    void recoversWritesSpreadOverFlushedSegmentsAndLogs() {
+        LSMTree tree = new LSMTree(directory.toString());
+        String padding = "x".repeat(200);
+        // several memtables, all but the last one flushed by the time of the close
+        int keys = (int) (3 * Parameters.MEM_TABLE_MAX_BYTES / padding.length());
+        for (long key = 0; key < keys; key++) {
+            tree.put(new KeyValueEntry(key, key + padding));
+        }
+        tree.close();
+
+        LSMTree recovered = new LSMTree(directory.toString());
+
+        for (long key = 0; key < keys; key++) {
+            assertEquals(key + padding, recovered.read(key).value());
+        }
+        assertEquals(keys, recovered.readRange(0L, (long) keys).size());
+        recovered.close();
+    }
+
+    @Test
+    void dropsATornRecordAtTheEndOfTheLog() throws IOException {
+        LSMTree tree = new LSMTree(directory.toString());
+        tree.put(new KeyValueEntry(1L, "one"));
+        tree.batchPut(List.of(new KeyValueEntry(2L, "two"), new KeyValueEntry(3L, "three")));
+        tree.close();
+        // a record whose header made it to the file and whose payload did not
+        try (RandomAccessFile log = new RandomAccessFile(newestLog(), "rw")) {
+            log.seek(log.length());
+            log.writeInt(100);
+            log.writeInt(0);
+            log.write(new byte[10]);
+        }
+
+        LSMTree recovered = new LSMTree(directory.toString());
+
+        assertEquals("one", recovered.read(1L).value());
+        assertEquals("two", recovered.read(2L).value());
+        assertEquals("three", recovered.read(3L).value());
+        recovered.put(new KeyValueEntry(4L, "four"));
+        assertEquals("four", recovered.read(4L).value());
+        recovered.close();
+    }
+
+    private File[] logs() {
+        return directory.resolve("LOG").toFile().listFiles((dir, name) -> name.endsWith(".wal"));
+    }
+
+    private File newestLog() {
+        return Arrays.stream(logs())
+                .filter(log -> log.length() > 0)
+                .max(Comparator.comparing(File::getName))
+                .orElseThrow();
+    }
+
+    private static List<String> describe(List<KeyValueEntry> entries) {
+        List<String> described = new ArrayList<>();
+        for (KeyValueEntry entry : entries) {
+            described.add(entry.key() + ":" + entry.value());
+        }
+        return described;
+    }
+}
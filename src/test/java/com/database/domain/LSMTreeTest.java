@@ -0,0 +1,88 @@
+package com.database.domain;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LSMTreeTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsARangeAcrossTheMemTableAndTheSegments() {
+        LSMTree tree = new LSMTree(directory.toString());
+        for (long key = 0; key < 10; key++) {
+            tree.put(new KeyValueEntry(key, "stored"));
+        }
+        tree.close();
+        // the log is flushed to a segment on recovery, the later writes stay in the memtable
+        LSMTree reopened = new LSMTree(directory.toString());
+        reopened.put(new KeyValueEntry(3L, "updated"));
+        reopened.delete(4L);
+        reopened.put(new KeyValueEntry(20L, "added"));
+
+        List<KeyValueEntry> range = reopened.readRange(2L, 20L);
+
+        assertEquals(List.of(2L, 3L, 5L, 6L, 7L, 8L, 9L, 20L), range.stream().map(KeyValueEntry::key).toList());
+        assertEquals("stored", range.get(0).value());
+        assertEquals("updated", range.get(1).value());
+        assertEquals("added", range.getLast().value());
+        assertThrows(IllegalArgumentException.class, () -> reopened.readRange(2L, 1L));
+        reopened.close();
+    }
+
+    @Test
+    void readersSeeABatchEntirelyOrNotAtAll() throws InterruptedException {
+        LSMTree tree = new LSMTree(directory.toString());
+        int batches = 2_000;
+        Thread writer = Thread.ofPlatform().start(() -> {
+            for (int version = 0; version < batches; version++) {
+                List<KeyValueEntry> batch = new ArrayList<>();
+                for (long key = 0; key < 10; key++) {
+                    batch.add(new KeyValueEntry(key, "version-" + version));
+                }
+                tree.batchPut(batch);
+            }
+        });
+
+        while (writer.isAlive()) {
+            List<KeyValueEntry> range = tree.readRange(0L, 9L);
+            Set<String> versions = range.stream().map(KeyValueEntry::value).collect(Collectors.toSet());
+            assertTrue(range.isEmpty() || range.size() == 10 && versions.size() == 1, "read " + range);
+        }
+        writer.join();
+
+        assertEquals("version-" + (batches - 1), tree.read(9L).value());
+        tree.close();
+    }
+
+    @Test
+    void closeWaitsForTheFlushesOfTheSealedMemTables() {
+        LSMTree tree = new LSMTree(directory.toString());
+        String padding = "x".repeat(200);
+        int keys = (int) (3 * Parameters.MEM_TABLE_MAX_BYTES / padding.length());
+        for (long key = 0; key < keys; key++) {
+            tree.put(new KeyValueEntry(key, key + padding));
+        }
+
+        tree.close();
+
+        // only the log of the active memtable is left, the others were removed after their flushes
+        assertEquals(1, directory.resolve("LOG").toFile().list().length);
+        File[] segments = directory.resolve("STORE").toFile().listFiles((dir, name) -> name.endsWith(".bin"));
+        assertTrue(segments.length > 0);
+        LSMTree reopened = new LSMTree(directory.toString());
+        assertEquals(keys, reopened.readRange(0L, (long) keys).size());
+        reopened.close();
+    }
+}
@@ -0,0 +1,100 @@
+package com.database.domain;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeveledCompactionPolicyTest {
+    private static final long LEVEL_1_MAX_BYTES = 1024 * 1024 * 1024;
+    private static final long TARGET_SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private TestSegments segments;
+
+    @BeforeEach
+    void setUp() {
+        segments = new TestSegments(directory);
+    }
+
+    @Test
+    void mergesLevel0WithTheOverlappingPartOfLevel1OnceItHasEnoughRuns() {
+        LeveledCompactionPolicy policy = new LeveledCompactionPolicy(4, LEVEL_1_MAX_BYTES, 10, TARGET_SEGMENT_BYTES);
+        Segment overlapping = segments.segment(1, 1, 50, 150, 8);
+        Segment apart = segments.segment(1, 1, 500, 600, 8);
+        List<Segment> live = new ArrayList<>(List.of(overlapping, apart));
+        for (long sequence = 10; sequence < 13; sequence++) {
+            live.add(segments.segment(0, sequence, 0, 100, 8));
+        }
+        assertEquals(Optional.empty(), policy.pickCompaction(TestSegments.inReadOrder(live)));
+
+        Segment fourthRun = segments.segment(0, 13, 0, 100, 8);
+        live.add(fourthRun);
+        Compaction compaction = policy.pickCompaction(TestSegments.inReadOrder(live)).orElseThrow();
+
+        assertEquals(1, compaction.outputLevel());
+        assertEquals(TARGET_SEGMENT_BYTES, compaction.maxOutputSegmentBytes());
+        assertEquals(5, compaction.inputs().size());
+        assertTrue(compaction.inputs().contains(fourthRun));
+        assertTrue(compaction.inputs().contains(overlapping));
+        assertFalse(compaction.inputs().contains(apart));
+    }
+
+    @Test
+    void countsTheSegmentsOfOneFlushAsOneRun() {
+        LeveledCompactionPolicy policy = new LeveledCompactionPolicy(4, LEVEL_1_MAX_BYTES, 10, TARGET_SEGMENT_BYTES);
+        List<Segment> live = new ArrayList<>();
+        // one flush split into three segments, and two more flushes
+        live.add(segments.segment(0, 10, 0, 9, 8));
+        live.add(segments.segment(0, 10, 10, 19, 8));
+        live.add(segments.segment(0, 10, 20, 29, 8));
+        live.add(segments.segment(0, 11, 0, 29, 8));
+        live.add(segments.segment(0, 12, 0, 29, 8));
+
+        assertEquals(Optional.empty(), policy.pickCompaction(TestSegments.inReadOrder(live)));
+    }
+
+    @Test
+    void pushesSegmentsOfAnOversizedLevelDownRoundRobin() {
+        LeveledCompactionPolicy policy = new LeveledCompactionPolicy(4, 1, 1_000_000, TARGET_SEGMENT_BYTES);
+        Segment first = segments.segment(1, 1, 0, 9, 8);
+        Segment second = segments.segment(1, 1, 10, 19, 8);
+        Segment third = segments.segment(1, 1, 20, 29, 8);
+        Segment belowFirstAndSecond = segments.segment(2, 1, 5, 12, 8);
+        Segment belowThird = segments.segment(2, 1, 25, 40, 8);
+        List<Segment> live = TestSegments.inReadOrder(List.of(first, second, third, belowFirstAndSecond, belowThird));
+
+        List<List<Segment>> picked = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Compaction compaction = policy.pickCompaction(live).orElseThrow();
+            assertEquals(2, compaction.outputLevel());
+            picked.add(compaction.inputs());
+        }
+
+        assertEquals(List.of(first, belowFirstAndSecond), picked.get(0));
+        assertEquals(List.of(second, belowFirstAndSecond), picked.get(1));
+        assertEquals(List.of(third, belowThird), picked.get(2));
+        assertEquals(List.of(first, belowFirstAndSecond), picked.get(3));
+    }
+
+    @Test
+    void leavesBalancedLevelsAlone() {
+        LeveledCompactionPolicy policy = new LeveledCompactionPolicy(4, LEVEL_1_MAX_BYTES, 10, TARGET_SEGMENT_BYTES);
+        List<Segment> live = List.of(
+                segments.segment(0, 3, 0, 100, 8),
+                segments.segment(1, 2, 0, 50, 8),
+                segments.segment(2, 1, 0, 50, 8));
+
+        assertEquals(Optional.empty(), policy.pickCompaction(TestSegments.inReadOrder(live)));
+    }
+}
@@ -0,0 +1,96 @@
+package com.database.domain;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MergingIteratorTest {
+
+    @Test
+    void returnsTheEntryOfTheNewestSourceForEveryKey() {
+        List<Iterator<KeyValueEntry>> sources = List.of(
+                iterator("2:new", "5:new"),
+                iterator("1:old", "2:old", "3:old"),
+                iterator("2:oldest", "4:oldest", "5:oldest"));
+
+        assertEquals(List.of("1:old", "2:new", "3:old", "4:oldest", "5:new"),
+                describe(new MergingIterator(sources, false)));
+    }
+
+    @Test
+    void tombstonesShadowOlderEntries() {
+        List<Iterator<KeyValueEntry>> sources = List.of(
+                iterator("1:", "3:"),
+                iterator("1:old", "2:old", "3:old"));
+
+        assertEquals(List.of("2:old"), describe(new MergingIterator(sources, true)));
+        assertEquals(List.of("1:", "2:old", "3:"), describe(new MergingIterator(
+                List.of(iterator("1:", "3:"), iterator("1:old", "2:old", "3:old")), false)));
+    }
+
+    @Test
+    void mergesEmptyAndExhaustedSources() {
+        MergingIterator none = new MergingIterator(List.of(), true);
+        MergingIterator empty = new MergingIterator(List.of(iterator(), iterator("7:x"), iterator()), true);
+
+        assertFalse(none.hasNext());
+        assertThrows(NoSuchElementException.class, none::next);
+        assertEquals(List.of("7:x"), describe(empty));
+    }
+
+    @Test
+    void agreesWithApplyingTheSourcesOldestFirst() {
+        Random random = new Random(42);
+        List<TreeMap<Long, String>> sources = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            TreeMap<Long, String> source = new TreeMap<>();
+            for (int j = 0; j < 500; j++) {
+                source.put((long) random.nextInt(1_000) - 500, random.nextInt(4) == 0 ? "" : "v" + i);
+            }
+            sources.add(source);
+        }
+        TreeMap<Long, String> expected = new TreeMap<>();
+        for (int i = sources.size() - 1; i >= 0; i--) {
+            expected.putAll(sources.get(i));
+        }
+        expected.values().removeIf(String::isEmpty);
+
+        List<Iterator<KeyValueEntry>> iterators = sources.stream()
+                .map(source -> source.entrySet().stream()
+                        .map(entry -> new KeyValueEntry(entry.getKey(), entry.getValue()))
+                        .iterator())
+                .toList();
+
+        List<String> merged = describe(new MergingIterator(iterators, true));
+
+        assertEquals(expected.entrySet().stream().map(entry -> entry.getKey() + ":" + entry.getValue()).toList(),
+                merged);
+    }
+
+    /**
+     * Entries written as key:value, a tombstone as key: alone.
+     */
+    private static Iterator<KeyValueEntry> iterator(String... entries) {
+        List<KeyValueEntry> list = new ArrayList<>();
+        for (String entry : entries) {
+            String[] keyValue = entry.split(":", -1);
+            list.add(new KeyValueEntry(Long.parseLong(keyValue[0]), keyValue[1]));
+        }
+        return list.iterator();
+    }
+
+    private static List<String> describe(Iterator<KeyValueEntry> iterator) {
+        List<String> described = new ArrayList<>();
+        iterator.forEachRemaining(entry -> described.add(entry.key() + ":" + entry.value()));
+        return described;
+    }
+}
@@ -0,0 +1,95 @@
+package com.database.domain;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapMemTableTest {
+    @Test
+    void keepsTheLatestValueOfEveryKeyInOrder() {
+        OffHeapMemTable memTable = new OffHeapMemTable(1 << 20, 4096);
+        memTable.add(new KeyValueEntry(5L, "five"));
+        memTable.add(new KeyValueEntry(-3L, "minus three"));
+        memTable.add(KeyValueEntry.empty(7L));
+        memTable.add(new KeyValueEntry(5L, "fünf"));
+
+        assertEquals("fünf", memTable.get(5L).orElseThrow().value());
+        assertEquals(KeyValueEntry.EMPTY_VALUE, memTable.get(7L).orElseThrow().value());
+        assertEquals(Optional.empty(), memTable.get(6L));
+        assertEquals(3, memTable.size());
+        assertEquals(List.of(-3L, 5L, 7L), keys(memTable.iterator()));
+        assertEquals(List.of(5L), keys(memTable.iterator(0L, 6L)));
+        memTable.close();
+    }
+
+    @Test
+    void givesAValueBiggerThanAChunkAChunkOfItsOwn() {
+        OffHeapMemTable memTable = new OffHeapMemTable(1 << 20, 256);
+        String big = "x".repeat(1_000);
+        memTable.add(new KeyValueEntry(1L, "small"));
+        memTable.add(new KeyValueEntry(2L, big));
+        memTable.add(new KeyValueEntry(3L, "small"));
+
+        assertEquals(big, memTable.get(2L).orElseThrow().value());
+        assertEquals("small", memTable.get(3L).orElseThrow().value());
+        assertTrue(memTable.sizeBytes() >= 256 + 1_000);
+        memTable.close();
+    }
+
+    @Test
+    void isFullOnceItsChunksReachTheBudget() {
+        OffHeapMemTable memTable = new OffHeapMemTable(4096, 1024);
+        long key = 0;
+        while (!memTable.isFull()) {
+            memTable.add(new KeyValueEntry(key++, "value"));
+        }
+
+        assertEquals(4096, memTable.sizeBytes());
+        assertEquals(key, memTable.size());
+        memTable.close();
+    }
+
+    @Test
+    void readersSeeAConsistentTableWhileWritersAddConcurrently() throws InterruptedException {
+        OffHeapMemTable memTable = new OffHeapMemTable(Long.MAX_VALUE, 64 * 1024);
+
+        List<Throwable> failures = SkipListMemTableTest.readWhileWriting(memTable);
+
+        assertEquals(List.of(), failures);
+        int keys = SkipListMemTableTest.WRITERS * SkipListMemTableTest.KEYS_PER_WRITER;
+        assertEquals(keys, memTable.size());
+        for (long key = 0; key < keys; key++) {
+            assertEquals(SkipListMemTableTest.value(key, SkipListMemTableTest.VERSIONS - 1),
+                    memTable.get(key).orElseThrow().value());
+        }
+        memTable.close();
+    }
+
+    @Test
+    void readersFindTheTableEmptyOnceItIsClosedUnderThem() throws InterruptedException {
+        OffHeapMemTable memTable = new OffHeapMemTable(Long.MAX_VALUE, 64 * 1024);
+        Iterator<KeyValueEntry> started = memTable.iterator();
+
+        List<Throwable> failures = SkipListMemTableTest.readWhileWritingAndClosing(memTable);
+
+        assertEquals(List.of(), failures);
+        assertEquals(Optional.empty(), memTable.get(0L));
+        assertFalse(memTable.iterator().hasNext());
+        assertFalse(memTable.iterator(0L, 100L).hasNext());
+        // an iterator created before any write had nothing to read ahead
+        assertFalse(started.hasNext());
+    }
+
+    private static List<Long> keys(Iterator<KeyValueEntry> iterator) {
+        List<Long> keys = new ArrayList<>();
+        iterator.forEachRemaining(entry -> keys.add(entry.key()));
+        return keys;
+    }
+}
@@ -0,0 +1,50 @@
+package com.database.domain;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class OperationTest {
+
+    @Test
+    void roundTripsEveryType() {
+        List<Operation> operations = List.of(
+                new Operation(PersistableOperationType.PUT, new KeyValueEntry(42L, "value")),
+                new Operation(PersistableOperationType.DEL, KeyValueEntry.empty(Long.MIN_VALUE)),
+                new Operation(PersistableOperationType.BATCH_PUT, List.of(
+                        new KeyValueEntry(-1L, "a|b,c:d"),
+                        new KeyValueEntry(0L, ""),
+                        new KeyValueEntry(Long.MAX_VALUE, "zażółć 😀"))));
+
+        for (Operation operation : operations) {
+            ByteBuffer bytes = ByteBuffer.wrap(operation.toBytes());
+
+            Operation decoded = Operation.fromBytes(bytes);
+
+            assertEquals(operation.type(), decoded.type());
+            assertEquals(operation.entries(), decoded.entries());
+            assertEquals(operation.entries().stream().map(KeyValueEntry::value).toList(),
+                    decoded.entries().stream().map(KeyValueEntry::value).toList());
+            assertFalse(bytes.hasRemaining());
+        }
+    }
+
+    @Test
+    void decodesFromAnOffsetInASharedBuffer() {
+        Operation first = new Operation(PersistableOperationType.PUT, new KeyValueEntry(1L, "one"));
+        Operation second = new Operation(PersistableOperationType.PUT, new KeyValueEntry(2L, "two"));
+        byte[] firstBytes = first.toBytes();
+        byte[] secondBytes = second.toBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(firstBytes.length + secondBytes.length)
+                .put(firstBytes)
+                .put(secondBytes)
+                .flip();
+
+        assertEquals("one", Operation.fromBytes(buffer).entries().get(0).value());
+        assertEquals("two", Operation.fromBytes(buffer.slice()).entries().get(0).value());
+    }
+}
@@ -0,0 +1,157 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentStorageTest {
+    // small enough to split a flush of a few thousand entries into several segments
+    private static final long MAX_SEGMENT_BYTES = 16 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(SegmentSource.ReadMode.class)
+    void reopensTheFlushedSegments(SegmentSource.ReadMode readMode) {
+        PersistentStorage storage = open(readMode);
+        storage.flush(entries(0, 3_000, "first").iterator(), 7);
+        storage.flush(List.of(new KeyValueEntry(1L, "second"), KeyValueEntry.empty(2L)).iterator(), 8);
+        int segmentCount = storage.segments().size();
+
+        PersistentStorage reopened = open(readMode);
+
+        assertTrue(segmentCount > 2);
+        assertEquals(segmentCount, reopened.segments().size());
+        assertEquals("first", reopened.read(0L).orElseThrow().value());
+        assertEquals("second", reopened.read(1L).orElseThrow().value());
+        assertEquals(KeyValueEntry.EMPTY_VALUE, reopened.read(2L).orElseThrow().value());
+        assertEquals("first", reopened.read(2_999L).orElseThrow().value());
+        assertEquals(Optional.empty(), reopened.read(3_000L));
+    }
+
+    @Test
+    void scansTheNewestEntryOfEveryKeyInTheRange() {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        storage.flush(entries(0, 3_000, "first").iterator(), 1);
+        storage.flush(List.of(new KeyValueEntry(1L, "second"), KeyValueEntry.empty(2L)).iterator(), 2);
+
+        List<KeyValueEntry> scanned = new ArrayList<>();
+        try (RangeIterator iterator = storage.scan(1, 2_000)) {
+            iterator.forEachRemaining(scanned::add);
+        }
+
+        assertEquals(2_000, scanned.size());
+        assertEquals("second", scanned.get(0).value());
+        assertEquals(KeyValueEntry.EMPTY_VALUE, scanned.get(1).value());
+        assertEquals("first", scanned.get(2).value());
+        assertEquals(2_000L, scanned.getLast().key());
+    }
+
+    @Test
+    void keepsTheLogCheckpointAcrossAReopen() {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        assertEquals(0, storage.logCheckpoint());
+        storage.flush(entries(0, 100, "first").iterator(), 7);
+        storage.compact(new Compaction(storage.segments(), 1, MAX_SEGMENT_BYTES));
+
+        PersistentStorage reopened = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+
+        assertEquals(7, storage.logCheckpoint());
+        assertEquals(7, reopened.logCheckpoint());
+        reopened.flush(entries(0, 1, "second").iterator(), 8);
+        assertEquals(8, open(SegmentSource.ReadMode.MEMORY_MAPPED).logCheckpoint());
+    }
+
+    @Test
+    void removesTheSegmentsOfAnInterruptedFlush() throws IOException {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        storage.flush(entries(0, 100, "flushed").iterator(), 1);
+        // a segment still being written
+        File tmp = new File(directory.resolve("STORE").toFile(), "segment_1001_tmp.bin");
+        Files.write(tmp.toPath(), new byte[]{1, 2, 3});
+
+        PersistentStorage reopened = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+
+        assertFalse(tmp.exists());
+        assertEquals("flushed", reopened.read(0L).orElseThrow().value());
+        reopened.flush(entries(0, 1, "later").iterator(), 2);
+        assertEquals("later", open(SegmentSource.ReadMode.MEMORY_MAPPED).read(0L).orElseThrow().value());
+    }
+
+    @Test
+    void removesSegmentsNotListedInTheManifest() {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        storage.flush(entries(0, 100, "flushed").iterator(), 1);
+        // renamed into place, but the manifest naming it was never saved
+        File orphan = new File(directory.resolve("STORE").toFile(), "segment_1000.bin");
+        SegmentWriter writer = new SegmentWriter(orphan);
+        writer.append(new KeyValueEntry(0L, "orphaned"));
+        writer.close();
+
+        PersistentStorage reopened = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+
+        assertFalse(orphan.exists());
+        assertEquals("flushed", reopened.read(0L).orElseThrow().value());
+    }
+
+    @Test
+    void keepsTombstonesWhileAnOlderSegmentOutsideTheCompactionMayHoldTheKey() {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        storage.flush(List.of(new KeyValueEntry(5L, "old")).iterator(), 1);
+        storage.compact(new Compaction(storage.segments(), 1, MAX_SEGMENT_BYTES));
+        storage.flush(List.of(KeyValueEntry.empty(5L)).iterator(), 2);
+        storage.flush(List.of(new KeyValueEntry(6L, "new")).iterator(), 3);
+
+        storage.compact(new Compaction(segmentsOfLevel(storage, 0), 0, MAX_SEGMENT_BYTES));
+
+        assertEquals(KeyValueEntry.EMPTY_VALUE, storage.read(5L).orElseThrow().value());
+        assertEquals("new", storage.read(6L).orElseThrow().value());
+    }
+
+    @Test
+    void dropsTombstonesAndShadowedValuesWhenNothingOlderMayHoldTheKey() {
+        PersistentStorage storage = open(SegmentSource.ReadMode.MEMORY_MAPPED);
+        storage.flush(List.of(new KeyValueEntry(5L, "old"), new KeyValueEntry(6L, "old")).iterator(), 1);
+        storage.compact(new Compaction(storage.segments(), 1, MAX_SEGMENT_BYTES));
+        storage.flush(List.of(KeyValueEntry.empty(5L), new KeyValueEntry(6L, "new")).iterator(), 2);
+
+        storage.compact(new Compaction(storage.segments(), 1, MAX_SEGMENT_BYTES));
+
+        assertEquals(1, storage.segments().size());
+        assertEquals(1, storage.segments().getFirst().entryCount());
+        assertEquals(Optional.empty(), storage.read(5L));
+        assertEquals("new", open(SegmentSource.ReadMode.MEMORY_MAPPED).read(6L).orElseThrow().value());
+    }
+
+    private PersistentStorage open(SegmentSource.ReadMode readMode) {
+        return new PersistentStorage(directory.toString(), readMode, MAX_SEGMENT_BYTES);
+    }
+
+    private static List<Segment> segmentsOfLevel(PersistentStorage storage, int level) {
+        return storage.segments().stream()
+                .filter(segment -> segment.level() == level)
+                .toList();
+    }
+
+    static List<KeyValueEntry> entries(long from, long to, String value) {
+        List<KeyValueEntry> entries = new ArrayList<>();
+        for (long key = from; key < to; key++) {
+            entries.add(new KeyValueEntry(key, value));
+        }
+        return entries;
+    }
+}
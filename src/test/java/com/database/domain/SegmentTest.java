@@ -0,0 +1,143 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.database.domain.heuristic.CacheStats;
+import com.database.domain.heuristic.LongKeyCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentTest {
+    private static final int ENTRY_COUNT = 5_000;
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @EnumSource(SegmentSource.ReadMode.class)
+    void readsBackWhatWasWritten(SegmentSource.ReadMode readMode) {
+        File file = write(entries());
+
+        Segment segment = open(file, readMode);
+
+        assertEquals(ENTRY_COUNT, segment.entryCount());
+        assertEquals(-2L * (ENTRY_COUNT - 1), segment.minKey());
+        assertEquals(0L, segment.maxKey());
+        for (KeyValueEntry entry : entries()) {
+            assertEquals(entry.value(), segment.get(entry.key()).value());
+        }
+        assertNull(segment.get(-1L));
+        assertNull(segment.get(1L));
+        segment.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(SegmentSource.ReadMode.class)
+    void iteratesOverARangeInKeyOrder(SegmentSource.ReadMode readMode) {
+        Segment segment = open(write(entries()), readMode);
+
+        List<KeyValueEntry> all = new ArrayList<>();
+        segment.iterator().forEachRemaining(all::add);
+        List<KeyValueEntry> range = new ArrayList<>();
+        // bounds between stored keys, spanning more than one chunk of the iterator
+        segment.iterator(-5_001, -1_999).forEachRemaining(range::add);
+
+        assertEquals(entries(), all);
+        assertEquals(entries().stream().map(KeyValueEntry::value).toList(),
+                all.stream().map(KeyValueEntry::value).toList());
+        assertEquals(-5_000L, range.get(0).key());
+        assertEquals(-2_000L, range.get(range.size() - 1).key());
+        assertEquals(1_501, range.size());
+        segment.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(SegmentSource.ReadMode.class)
+    void readsAnEmptySegment(SegmentSource.ReadMode readMode) {
+        Segment segment = open(write(List.of()), readMode);
+
+        assertEquals(0, segment.entryCount());
+        assertNull(segment.get(0L));
+        assertFalse(segment.iterator().hasNext());
+        segment.release();
+    }
+
+    @ParameterizedTest
+    @EnumSource(SegmentSource.ReadMode.class)
+    void rejectsATruncatedSegment(SegmentSource.ReadMode readMode) throws IOException {
+        File file = write(entries());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+
+        assertThrows(IllegalStateException.class, () -> open(file, readMode));
+    }
+
+    @Test
+    void rejectsKeysOutOfOrder() {
+        SegmentWriter writer = new SegmentWriter(directory.resolve("segment_1_tmp.bin").toFile());
+        writer.append(new KeyValueEntry(2L, "b"));
+
+        assertThrows(IllegalArgumentException.class, () -> writer.append(new KeyValueEntry(1L, "a")));
+        assertThrows(IllegalArgumentException.class, () -> writer.append(new KeyValueEntry(2L, "b")));
+        writer.abort();
+    }
+
+    @Test
+    void skipsTheFileForMostKeysItDoesNotHold() {
+        LongKeyCache<byte[]> blockCache = Parameters.blockCache();
+        Segment segment = Segment.open(write(entries()), 1, 0, 1, SegmentSource.ReadMode.FILE_CHANNEL, blockCache);
+        CacheStats opened = blockCache.stats();
+
+        int skipped = 0;
+        // the odd keys within the key range of the segment
+        for (long key = -2L * ENTRY_COUNT + 1; key < 0; key += 2) {
+            if (!segment.mightContain(key)) {
+                assertNull(segment.get(key));
+                skipped++;
+            }
+        }
+
+        assertEquals(opened, blockCache.stats());
+        assertTrue(skipped > ENTRY_COUNT * 95 / 100, skipped + " of " + ENTRY_COUNT + " skipped");
+        segment.release();
+    }
+
+    /**
+     * Even keys from -2 * (ENTRY_COUNT - 1) to 0, tombstones and multi-byte characters among the values.
+     */
+    private static List<KeyValueEntry> entries() {
+        List<KeyValueEntry> entries = new ArrayList<>();
+        for (int i = ENTRY_COUNT - 1; i >= 0; i--) {
+            long key = -2L * i;
+            entries.add(i % 100 == 0 ? KeyValueEntry.empty(key) : new KeyValueEntry(key, "value-" + i + "-ł"));
+        }
+        return entries;
+    }
+
+    private File write(List<KeyValueEntry> entries) {
+        File file = directory.resolve("segment_1.bin").toFile();
+        SegmentWriter writer = new SegmentWriter(file);
+        entries.forEach(writer::append);
+        writer.close();
+        return file;
+    }
+
+    private static Segment open(File file, SegmentSource.ReadMode readMode) {
+        return Segment.open(file, 1, 0, 1, readMode,
+                readMode == SegmentSource.ReadMode.FILE_CHANNEL ? Parameters.blockCache() : null);
+    }
+}
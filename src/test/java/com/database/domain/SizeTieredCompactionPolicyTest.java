@@ -0,0 +1,75 @@
+package com.database.domain;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SizeTieredCompactionPolicyTest {
+    private static final long MAX_SEGMENT_BYTES = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private TestSegments segments;
+    // runs of any size are compared, none is small enough to count as similar to everything
+    private final SizeTieredCompactionPolicy policy =
+            new SizeTieredCompactionPolicy(4, 32, 0.5, 1.5, 0, MAX_SEGMENT_BYTES);
+
+    @BeforeEach
+    void setUp() {
+        segments = new TestSegments(directory);
+    }
+
+    @Test
+    void mergesEnoughRunsOfSimilarSizeIntoOneRunOfLevel0() {
+        List<Segment> live = new ArrayList<>();
+        for (long sequence = 1; sequence <= 4; sequence++) {
+            live.add(segments.segment(0, sequence, 0, 99, 100));
+        }
+        // a second segment of the newest run
+        live.add(segments.segment(0, 4, 100, 109, 100));
+
+        Compaction compaction = policy.pickCompaction(TestSegments.inReadOrder(live)).orElseThrow();
+
+        assertEquals(0, compaction.outputLevel());
+        assertEquals(MAX_SEGMENT_BYTES, compaction.maxOutputSegmentBytes());
+        assertEquals(live.size(), compaction.inputs().size());
+    }
+
+    @Test
+    void mergesOnlyAdjacentRuns() {
+        List<Segment> live = new ArrayList<>();
+        live.add(segments.segment(0, 1, 0, 99, 100));
+        live.add(segments.segment(0, 2, 0, 99, 100));
+        // much bigger, and between the similar ones in sequence order
+        live.add(segments.segment(0, 3, 0, 999, 100));
+        live.add(segments.segment(0, 4, 0, 99, 100));
+        live.add(segments.segment(0, 5, 0, 99, 100));
+
+        assertEquals(Optional.empty(), policy.pickCompaction(TestSegments.inReadOrder(live)));
+    }
+
+    @Test
+    void prefersTheBucketOfTheSmallestRuns() {
+        List<Segment> small = new ArrayList<>();
+        List<Segment> live = new ArrayList<>();
+        for (long sequence = 1; sequence <= 4; sequence++) {
+            live.add(segments.segment(0, sequence, 0, 999, 100));
+        }
+        for (long sequence = 5; sequence <= 8; sequence++) {
+            small.add(segments.segment(0, sequence, 0, 9, 100));
+        }
+        live.addAll(small);
+
+        Compaction compaction = policy.pickCompaction(TestSegments.inReadOrder(live)).orElseThrow();
+
+        assertEquals(small.reversed(), compaction.inputs());
+    }
+}
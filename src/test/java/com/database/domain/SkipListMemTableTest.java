@@ -0,0 +1,155 @@
+package com.database.domain;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SkipListMemTableTest {
+    static final int WRITERS = 4;
+    static final int KEYS_PER_WRITER = 2_000;
+    static final int VERSIONS = 5;
+
+    @Test
+    void keepsTheLatestValueAndCountsEveryKeyOnce() {
+        SkipListMemTable memTable = new SkipListMemTable(1024);
+        memTable.add(new KeyValueEntry(2L, "a"));
+        memTable.add(new KeyValueEntry(1L, "b"));
+        memTable.add(new KeyValueEntry(2L, "ccc"));
+
+        assertEquals("ccc", memTable.get(2L).orElseThrow().value());
+        assertEquals(2, memTable.size());
+        assertEquals(List.of(1L, 2L), keys(memTable.iterator()));
+        assertEquals(List.of(2L), keys(memTable.iterator(2L, 5L)));
+        assertFalse(memTable.isFull());
+    }
+
+    @Test
+    void readersSeeAConsistentTableWhileWritersAddConcurrently() throws InterruptedException {
+        SkipListMemTable memTable = new SkipListMemTable(Long.MAX_VALUE);
+
+        List<Throwable> failures = readWhileWriting(memTable);
+
+        assertEquals(List.of(), failures);
+        assertEquals(WRITERS * KEYS_PER_WRITER, memTable.size());
+        for (long key = 0; key < WRITERS * KEYS_PER_WRITER; key++) {
+            assertEquals(value(key, VERSIONS - 1), memTable.get(key).orElseThrow().value());
+        }
+    }
+
+    /**
+     * Writers each add every version of their own keys in turn while readers check that lookups never go back to an
+     * older version and iterators return ascending keys, each with a value it was given.
+     */
+    static List<Throwable> readWhileWriting(MemTable memTable) throws InterruptedException {
+        return readWhileWriting(memTable, false);
+    }
+
+    /**
+     * As {@link #readWhileWriting(MemTable)}, then closes the memtable with the readers still going; from then on
+     * they may find it empty.
+     */
+    static List<Throwable> readWhileWritingAndClosing(MemTable memTable) throws InterruptedException {
+        return readWhileWriting(memTable, true);
+    }
+
+    private static List<Throwable> readWhileWriting(MemTable memTable, boolean close) throws InterruptedException {
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch written = new CountDownLatch(WRITERS);
+        AtomicBoolean closed = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            long firstKey = (long) writer * KEYS_PER_WRITER;
+            threads.add(start(failures, () -> {
+                for (int version = 0; version < VERSIONS; version++) {
+                    for (long key = firstKey; key < firstKey + KEYS_PER_WRITER; key++) {
+                        memTable.add(new KeyValueEntry(key, value(key, version)));
+                    }
+                }
+                written.countDown();
+            }));
+        }
+        threads.add(start(failures, () -> {
+            int[] seen = new int[WRITERS * KEYS_PER_WRITER];
+            Arrays.fill(seen, -1);
+            while (!done.get()) {
+                for (int key = 0; key < seen.length; key += 7) {
+                    Optional<KeyValueEntry> entry = memTable.get((long) key);
+                    if (entry.isEmpty() && closed.get()) {
+                        continue;
+                    }
+                    int version = entry.isPresent() ? version(key, entry.get().value()) : -1;
+                    assertTrue(version >= seen[key], "key " + key + " went back to version " + version);
+                    seen[key] = version;
+                }
+            }
+        }));
+        threads.add(start(failures, () -> {
+            while (!done.get()) {
+                checkAscending(memTable.iterator());
+                checkAscending(memTable.iterator(500L, 5_500L));
+            }
+        }));
+        written.await();
+        if (close) {
+            closed.set(true);
+            memTable.close();
+            // keep reading the closed memtable for a while
+            Thread.sleep(100);
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return List.copyOf(failures);
+    }
+
+    static String value(long key, int version) {
+        return key + "-" + version + "-ł";
+    }
+
+    private static int version(long key, String value) {
+        String[] parts = value.split("-");
+        assertEquals(Long.toString(key), parts[0]);
+        return Integer.parseInt(parts[1]);
+    }
+
+    private static void checkAscending(Iterator<KeyValueEntry> iterator) {
+        long previous = Long.MIN_VALUE;
+        boolean first = true;
+        while (iterator.hasNext()) {
+            KeyValueEntry entry = iterator.next();
+            assertTrue(first || entry.key() > previous, entry.key() + " after " + previous);
+            version(entry.key(), entry.value());
+            previous = entry.key();
+            first = false;
+        }
+    }
+
+    private static List<Long> keys(Iterator<KeyValueEntry> iterator) {
+        List<Long> keys = new ArrayList<>();
+        iterator.forEachRemaining(entry -> keys.add(entry.key()));
+        return keys;
+    }
+
+    private static Thread start(ConcurrentLinkedQueue<Throwable> failures, Runnable task) {
+        return Thread.ofPlatform().start(() -> {
+            try {
+                task.run();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+    }
+}
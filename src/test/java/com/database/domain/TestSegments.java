@@ -0,0 +1,36 @@
+package com.database.domain;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes small segments for tests that only look at their levels, sequences, key ranges and sizes.
+ */
+final class TestSegments {
+    private final Path directory;
+    private long nextId = 1;
+
+    TestSegments(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * One entry per key of [minKey, maxKey], each holding a value of {@code valueBytes} bytes.
+     */
+    Segment segment(int level, long sequence, long minKey, long maxKey, int valueBytes) {
+        long id = nextId++;
+        File file = directory.resolve("segment_" + id + ".bin").toFile();
+        SegmentWriter writer = new SegmentWriter(file);
+        String value = "x".repeat(valueBytes);
+        for (long key = minKey; key <= maxKey; key++) {
+            writer.append(new KeyValueEntry(key, value));
+        }
+        writer.close();
+        return Segment.open(file, id, level, sequence, SegmentSource.ReadMode.MEMORY_MAPPED, null);
+    }
+
+    static List<Segment> inReadOrder(List<Segment> segments) {
+        return segments.stream().sorted(PersistentStorage.READ_ORDER).toList();
+    }
+}
@@ -0,0 +1,169 @@
+package com.database.domain;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path directory;
+
+    private LogicalTimeProvider logicalTimeProvider;
+
+    @BeforeEach
+    void setUp() {
+        logicalTimeProvider = new LogicalTimeProvider();
+    }
+
+    @Test
+    void recoversTheLogsNewerThanTheCheckpointInVersionOrder() {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.APPEND);
+        long first = nextLogFile(log);
+        log.append(put(1, "a"));
+        log.append(new Operation(PersistableOperationType.DEL, KeyValueEntry.empty(2L)));
+        long second = nextLogFile(log);
+        log.append(batch(3, "c", 4, "d"));
+        nextLogFile(log);
+
+        List<WriteAheadLog.RecoveredLog> recovered = newLog(WriteAheadLog.FileMode.APPEND).recover(first - 1);
+
+        assertEquals(first, recovered.get(0).version());
+        assertEquals(List.of("1:a", "2:"), describe(recovered.get(0).operations()));
+        assertEquals(PersistableOperationType.DEL, recovered.get(0).operations().get(1).type());
+        assertEquals(second, recovered.get(1).version());
+        assertEquals(List.of("3:c,4:d"), describe(recovered.get(1).operations()));
+        assertEquals(PersistableOperationType.BATCH_PUT, recovered.get(1).operations().get(0).type());
+    }
+
+    @Test
+    void removesTheLogsUpToTheCheckpoint() {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.APPEND);
+        long first = nextLogFile(log);
+        log.append(put(1, "a"));
+        long second = nextLogFile(log);
+        log.append(put(2, "b"));
+        nextLogFile(log);
+
+        List<WriteAheadLog.RecoveredLog> recovered = newLog(WriteAheadLog.FileMode.APPEND).recover(first);
+
+        assertEquals(second, recovered.get(0).version());
+        assertEquals(List.of("2:b"), describe(recovered.get(0).operations()));
+        assertFalse(logFile(first).exists());
+    }
+
+    @Test
+    void stopsReplayAtATornRecord() throws IOException {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.APPEND);
+        long version = nextLogFile(log);
+        log.append(put(1, "a"));
+        log.append(put(2, "b"));
+        log.append(put(3, "the record cut short by the crash"));
+        nextLogFile(log);
+        try (RandomAccessFile file = new RandomAccessFile(logFile(version), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        List<WriteAheadLog.RecoveredLog> recovered = newLog(WriteAheadLog.FileMode.APPEND).recover(version - 1);
+
+        assertEquals(List.of("1:a", "2:b"), describe(recovered.get(0).operations()));
+    }
+
+    @Test
+    void stopsReplayAtATornRecordHeader() throws IOException {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.APPEND);
+        long version = nextLogFile(log);
+        log.append(put(1, "a"));
+        nextLogFile(log);
+        try (RandomAccessFile file = new RandomAccessFile(logFile(version), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[]{0, 0, 0});
+        }
+
+        List<WriteAheadLog.RecoveredLog> recovered = newLog(WriteAheadLog.FileMode.APPEND).recover(version - 1);
+
+        assertEquals(List.of("1:a"), describe(recovered.get(0).operations()));
+    }
+
+    @Test
+    void stopsReplayAtARecordFailingItsChecksum() throws IOException {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.APPEND);
+        long version = nextLogFile(log);
+        log.append(put(1, "a"));
+        log.append(put(2, "b"));
+        log.append(put(3, "c"));
+        nextLogFile(log);
+        int recordSize = 8 + put(1, "a").toBytes().length;
+        try (RandomAccessFile file = new RandomAccessFile(logFile(version), "rw")) {
+            // the value byte of the second record
+            file.seek(2L * recordSize - 1);
+            file.write('x');
+        }
+
+        List<WriteAheadLog.RecoveredLog> recovered = newLog(WriteAheadLog.FileMode.APPEND).recover(version - 1);
+
+        assertEquals(List.of("1:a"), describe(recovered.get(0).operations()));
+    }
+
+    @Test
+    void doesNotReplayTheStaleRecordsOfARecycledLog() {
+        WriteAheadLog log = newLog(WriteAheadLog.FileMode.PREALLOCATED);
+        nextLogFile(log);
+        log.append(put(1, "a"));
+        log.append(put(2, "b"));
+        log.append(put(3, "c"));
+        long flushed = nextLogFile(log);
+        log.removePreviousLogFiles(flushed);
+        long reused = nextLogFile(log);
+        log.append(put(4, "d"));
+        nextLogFile(log);
+
+        List<WriteAheadLog.RecoveredLog> recovered =
+                newLog(WriteAheadLog.FileMode.PREALLOCATED).recover(flushed);
+
+        assertEquals(reused, recovered.get(0).version());
+        assertEquals(List.of("4:d"), describe(recovered.get(0).operations()));
+        assertTrue(recovered.get(1).operations().isEmpty());
+    }
+
+    private WriteAheadLog newLog(WriteAheadLog.FileMode fileMode) {
+        return new WriteAheadLog(directory.toString(), logicalTimeProvider,
+                WriteAheadLogWriter.DurabilityMode.OS_BUFFERED, fileMode);
+    }
+
+    private long nextLogFile(WriteAheadLog log) {
+        logicalTimeProvider.incrementVersion();
+        log.newLogFile();
+        return logicalTimeProvider.getVersion();
+    }
+
+    private File logFile(long version) {
+        return directory.resolve("LOG").resolve("log_" + version + ".wal").toFile();
+    }
+
+    private static Operation put(long key, String value) {
+        return new Operation(PersistableOperationType.PUT, new KeyValueEntry(key, value));
+    }
+
+    private static Operation batch(long firstKey, String firstValue, long secondKey, String secondValue) {
+        return new Operation(PersistableOperationType.BATCH_PUT,
+                List.of(new KeyValueEntry(firstKey, firstValue), new KeyValueEntry(secondKey, secondValue)));
+    }
+
+    private static List<String> describe(List<Operation> operations) {
+        return operations.stream()
+                .map(operation -> String.join(",", operation.entries().stream()
+                        .map(entry -> entry.key() + ":" + entry.value())
+                        .toList()))
+                .toList();
+    }
+}
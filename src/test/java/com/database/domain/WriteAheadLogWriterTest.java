@@ -0,0 +1,147 @@
+package com.database.domain;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogWriterTest {
+    private static final int THREADS = 8;
+    private static final int APPENDS_PER_THREAD = 200;
+
+    @Test
+    void groupCommitReturnsAnAppendOnlyOnceItsRecordIsForced() throws InterruptedException {
+        WriteAheadLogWriter writer = new WriteAheadLogWriter(WriteAheadLogWriter.DurabilityMode.GROUP_FSYNC, 1_000);
+        RecordingLogFile logFile = new RecordingLogFile();
+        writer.roll(logFile);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+                        int record = thread * APPENDS_PER_THREAD + i;
+                        writer.append(record(record));
+                        assertTrue(logFile.isForced(record), "record " + record + " not forced");
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.close();
+
+        assertEquals(List.of(), List.copyOf(failures));
+        assertEquals(THREADS * APPENDS_PER_THREAD, logFile.written().size());
+        // concurrent appends share a force
+        assertTrue(logFile.forces() < THREADS * APPENDS_PER_THREAD, logFile.forces() + " forces");
+    }
+
+    @ParameterizedTest
+    @EnumSource(WriteAheadLogWriter.DurabilityMode.class)
+    void failsEveryAppendToAFileAfterAFailedWriteUntilTheNextRoll(WriteAheadLogWriter.DurabilityMode mode) {
+        WriteAheadLogWriter writer = new WriteAheadLogWriter(mode, 100);
+        RecordingLogFile failing = new RecordingLogFile();
+        writer.roll(failing);
+        writer.append(record(1));
+        failing.failWrites = true;
+
+        assertThrows(RuntimeException.class, () -> writer.append(record(2)));
+        failing.failWrites = false;
+        // the file may end in a torn record, nothing after it would be replayed
+        assertThrows(RuntimeException.class, () -> writer.append(record(3)));
+        RecordingLogFile next = new RecordingLogFile();
+        writer.roll(next);
+        writer.append(record(4));
+        writer.close();
+
+        assertEquals(List.of(1), failing.written());
+        assertTrue(failing.closed);
+        assertEquals(List.of(4), next.written());
+        assertTrue(next.closed);
+    }
+
+    @Test
+    void closeCommitsTheQueuedRecordsAndStopsTheGroupCommitThread() throws InterruptedException {
+        long groupCommitThreads = groupCommitThreads();
+        WriteAheadLogWriter writer = new WriteAheadLogWriter(WriteAheadLogWriter.DurabilityMode.GROUP_FSYNC, 1_000);
+        RecordingLogFile logFile = new RecordingLogFile();
+        writer.roll(logFile);
+        Thread appender = Thread.ofPlatform().start(() -> writer.append(record(1)));
+        appender.join();
+
+        writer.close();
+
+        assertEquals(List.of(1), logFile.written());
+        assertTrue(logFile.closed);
+        assertEquals(groupCommitThreads, groupCommitThreads());
+        assertThrows(IllegalStateException.class, () -> writer.append(record(2)));
+    }
+
+    private static ByteBuffer record(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, value);
+    }
+
+    private static long groupCommitThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("wal-group-commit") && thread.isAlive())
+                .count();
+    }
+
+    private static final class RecordingLogFile implements LogFile {
+        private final List<Integer> written = new ArrayList<>();
+        private int forcedRecords;
+        private int forces;
+        volatile boolean failWrites;
+        volatile boolean closed;
+
+        @Override
+        public synchronized void write(ByteBuffer[] records) throws IOException {
+            assertFalse(closed);
+            if (failWrites) {
+                throw new IOException("disk full");
+            }
+            for (ByteBuffer record : records) {
+                written.add(record.getInt(0));
+            }
+        }
+
+        @Override
+        public synchronized void force() {
+            forcedRecords = written.size();
+            forces++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        synchronized boolean isForced(int record) {
+            return written.subList(0, forcedRecords).contains(record);
+        }
+
+        synchronized List<Integer> written() {
+            return List.copyOf(written);
+        }
+
+        synchronized int forces() {
+            return forces;
+        }
+    }
+}
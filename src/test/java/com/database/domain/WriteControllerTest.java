@@ -0,0 +1,88 @@
+package com.database.domain;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteControllerTest {
+    private static final int MAX_IMMUTABLE_MEM_TABLES = 3;
+    private static final int SLOWDOWN_TRIGGER = 2;
+    private static final long DELAYED_WRITE_BYTES_PER_SECOND = 1_000;
+
+    private final WriteController controller =
+            new WriteController(MAX_IMMUTABLE_MEM_TABLES, SLOWDOWN_TRIGGER, DELAYED_WRITE_BYTES_PER_SECOND);
+
+    @Test
+    void followsTheNumberOfMemTablesWaitingForFlush() {
+        assertEquals(WriteController.State.NORMAL, controller.state());
+        controller.memTableSealed();
+        assertEquals(WriteController.State.NORMAL, controller.state());
+        controller.memTableSealed();
+        assertEquals(WriteController.State.SLOWDOWN, controller.state());
+        controller.memTableSealed();
+        assertEquals(WriteController.State.STALL, controller.state());
+
+        controller.memTableFlushed();
+        assertEquals(WriteController.State.SLOWDOWN, controller.state());
+        controller.memTableFlushed();
+        controller.memTableFlushed();
+        assertEquals(WriteController.State.NORMAL, controller.state());
+    }
+
+    @Test
+    void delaysWritesInProportionToTheirSizeInSlowdown() {
+        long normal = timeWriteMillis(100);
+        controller.memTableSealed();
+        controller.memTableSealed();
+
+        long delayed = timeWriteMillis(100);
+
+        assertTrue(normal < 50, "took " + normal + " ms");
+        // 100 bytes at 1000 bytes per second
+        assertTrue(delayed >= 90, "took " + delayed + " ms");
+    }
+
+    @Test
+    void stallsWritesUntilAFlush() throws InterruptedException {
+        sealUpToTheLimit();
+        Thread writer = Thread.ofPlatform().start(() -> controller.beforeWrite(100));
+
+        writer.join(200);
+        assertTrue(writer.isAlive());
+        controller.memTableFlushed();
+        writer.join(10_000);
+
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    void holdsASealedMemTableBackUntilTheListHasRoom() throws InterruptedException {
+        sealUpToTheLimit();
+        Thread sealer = Thread.ofPlatform().start(controller::memTableSealed);
+
+        sealer.join(200);
+        assertTrue(sealer.isAlive());
+        controller.memTableFlushed();
+        sealer.join(10_000);
+
+        assertFalse(sealer.isAlive());
+        // the waiting memtable took the place of the flushed one
+        assertEquals(WriteController.State.STALL, controller.state());
+    }
+
+    private void sealUpToTheLimit() {
+        for (int i = 0; i < MAX_IMMUTABLE_MEM_TABLES; i++) {
+            controller.memTableSealed();
+        }
+    }
+
+    private long timeWriteMillis(long bytes) {
+        long start = System.nanoTime();
+        controller.beforeWrite(bytes);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+}
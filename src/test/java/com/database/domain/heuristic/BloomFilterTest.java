@@ -0,0 +1,66 @@
+package com.database.domain.heuristic;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+    private static final int KEYS = 100_000;
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = filterOfEvenKeys();
+
+        for (long key = 0; key < 2L * KEYS; key += 2) {
+            assertTrue(filter.mightContain(key), "key " + key);
+        }
+    }
+
+    @Test
+    void hasAboutTheExpectedFalsePositiveRate() {
+        BloomFilter filter = filterOfEvenKeys();
+
+        int falsePositives = 0;
+        for (long key = 1; key < 2L * KEYS; key += 2) {
+            if (filter.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+
+        // about 1% with 10 bits per key
+        assertTrue(falsePositives < KEYS / 50, falsePositives + " false positives");
+    }
+
+    @Test
+    void answersTheSameAfterARoundTrip() {
+        BloomFilter filter = filterOfEvenKeys();
+        ByteBuffer buffer = ByteBuffer.allocate(filter.serializedSize());
+        filter.writeTo(buffer);
+
+        BloomFilter read = BloomFilter.readFrom(buffer.flip(), filter.serializedSize());
+
+        for (long key = -1_000; key < 2L * KEYS; key++) {
+            assertEquals(filter.mightContain(key), read.mightContain(key), "key " + key);
+        }
+    }
+
+    @Test
+    void worksForAnEmptySetOfKeys() {
+        BloomFilter filter = BloomFilter.create(0, 10);
+
+        assertFalse(filter.mightContain(0));
+        assertFalse(filter.mightContain(Long.MIN_VALUE));
+    }
+
+    private static BloomFilter filterOfEvenKeys() {
+        BloomFilter filter = BloomFilter.create(KEYS, 10);
+        for (long key = 0; key < 2L * KEYS; key += 2) {
+            filter.add(key);
+        }
+        return filter;
+    }
+}
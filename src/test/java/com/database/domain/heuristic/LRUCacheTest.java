@@ -0,0 +1,109 @@
+package com.database.domain.heuristic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LRUCacheTest {
+    @Test
+    void evictsTheLeastRecentlyUsedEntry() {
+        LRUCache<Long, String> cache = new LRUCache<>(3);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.put(3L, "three");
+        // 1 becomes the most recently used, 2 the least
+        cache.getIfPresent(1L);
+
+        cache.put(4L, "four");
+
+        assertNull(cache.getIfPresent(2L));
+        assertEquals("one", cache.getIfPresent(1L));
+        assertEquals("three", cache.getIfPresent(3L));
+        assertEquals("four", cache.getIfPresent(4L));
+    }
+
+    @Test
+    void replacesTheValueOfACachedKey() {
+        LRUCache<Long, String> cache = new LRUCache<>(2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+
+        cache.put(1L, "uno");
+        cache.put(3L, "three");
+
+        assertEquals("uno", cache.getIfPresent(1L));
+        assertNull(cache.getIfPresent(2L));
+    }
+
+    @Test
+    void putIfAbsentKeepsTheNewerValue() {
+        LRUCache<Long, String> cache = new LRUCache<>(2);
+        cache.put(1L, "newer");
+
+        cache.putIfAbsent(1L, "loaded earlier");
+        cache.putIfAbsent(2L, "loaded");
+
+        assertEquals("newer", cache.getIfPresent(1L));
+        assertEquals("loaded", cache.getIfPresent(2L));
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        LRUCache<Long, String> cache = new LRUCache<>(2);
+        cache.put(1L, "one");
+
+        cache.getIfPresent(1L);
+        cache.getIfPresent(1L);
+        cache.getIfPresent(2L);
+
+        assertEquals(new CacheStats(2, 1), cache.stats());
+    }
+
+    @Test
+    void evictsUntilTheTotalWeightFits() {
+        LRUCache<Long, String> cache = new LRUCache<>(10, (key, value) -> value.length());
+        cache.put(1L, "aaaa");
+        cache.put(2L, "bbbb");
+
+        cache.put(3L, "cc");
+        cache.put(4L, "dddddd");
+
+        assertNull(cache.getIfPresent(1L));
+        assertNull(cache.getIfPresent(2L));
+        assertEquals("cc", cache.getIfPresent(3L));
+        assertEquals("dddddd", cache.getIfPresent(4L));
+    }
+
+    @Test
+    void reweighsAReplacedValue() {
+        LRUCache<Long, String> cache = new LRUCache<>(10, (key, value) -> value.length());
+        cache.put(1L, "a");
+        cache.put(2L, "b");
+
+        cache.put(2L, "bbbbbbbbbb");
+
+        assertNull(cache.getIfPresent(1L));
+        assertEquals("bbbbbbbbbb", cache.getIfPresent(2L));
+    }
+
+    @Test
+    void dropsAValueReplacedByOneHeavierThanTheCache() {
+        LRUCache<Long, String> cache = new LRUCache<>(10, (key, value) -> value.length());
+        cache.put(1L, "old");
+        cache.put(2L, "kept");
+
+        cache.put(1L, "x".repeat(11));
+        cache.put(3L, "y".repeat(11));
+
+        assertNull(cache.getIfPresent(1L));
+        assertNull(cache.getIfPresent(3L));
+        assertEquals("kept", cache.getIfPresent(2L));
+    }
+
+    @Test
+    void rejectsANonPositiveCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new LRUCache<Long, String>(0));
+    }
+}
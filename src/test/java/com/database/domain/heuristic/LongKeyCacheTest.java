@@ -0,0 +1,108 @@
+package com.database.domain.heuristic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongKeyCacheTest {
+    // a value this long weighs more than the whole cache, putting it removes the key
+    private static final String TOO_HEAVY = "too heavy";
+    private static final long MAX_BYTES = 1L << 30;
+
+    @Test
+    void findsEveryRemainingKeyAfterRemovalsFromItsProbeRun() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MAX_BYTES, 1,
+                value -> value.equals(TOO_HEAVY) ? (int) MAX_BYTES : 0);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        // few distinct keys in a table kept half full, so probe runs are long and wrap around
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(300) * 1_000_003L;
+            if (random.nextInt(3) == 0) {
+                cache.put(key, TOO_HEAVY);
+                expected.remove(key);
+            } else {
+                cache.put(key, "value-" + i);
+                expected.put(key, "value-" + i);
+            }
+            if (i % 1_000 == 0) {
+                assertHolds(cache, expected);
+            }
+        }
+        assertHolds(cache, expected);
+    }
+
+    @Test
+    void sparesTheKeysReadSinceTheLastPassOfTheHand() {
+        int entryBytes = LongKeyCache.ENTRY_OVERHEAD_BYTES;
+        LongKeyCache<String> cache = new LongKeyCache<>(100L * entryBytes, 1, value -> 0);
+        for (long key = 0; key < 100; key++) {
+            cache.put(key, "value");
+        }
+        for (long key = 0; key < 50; key++) {
+            cache.getIfPresent(key);
+        }
+
+        for (long key = 100; key < 150; key++) {
+            cache.put(key, "value");
+        }
+
+        for (long key = 0; key < 50; key++) {
+            assertEquals("value", cache.getIfPresent(key), "key " + key);
+        }
+        // the new keys are not referenced either, the hand takes whichever it meets first
+        int cached = 0;
+        for (long key = 50; key < 150; key++) {
+            if (cache.getIfPresent(key) != null) {
+                cached++;
+            }
+        }
+        assertEquals(50, cached);
+    }
+
+    @Test
+    void boundsTheBytesOfItsEntries() {
+        long maxBytes = 64L * (LongKeyCache.ENTRY_OVERHEAD_BYTES + 100);
+        LongKeyCache<String> cache = new LongKeyCache<>(maxBytes, 1, String::length);
+        Random random = new Random(42);
+        for (long key = 0; key < 10_000; key++) {
+            cache.put(key, "x".repeat(random.nextInt(200)));
+        }
+
+        long bytes = 0;
+        for (long key = 0; key < 10_000; key++) {
+            String value = cache.getIfPresent(key);
+            bytes += value == null ? 0 : LongKeyCache.ENTRY_OVERHEAD_BYTES + value.length();
+        }
+        assertTrue(bytes <= maxBytes, bytes + " bytes");
+        // the last put always finds room
+        assertNotNull(cache.getIfPresent(9_999L));
+    }
+
+    @Test
+    void putIfAbsentKeepsTheNewerValue() {
+        LongKeyCache<String> cache = new LongKeyCache<>(MAX_BYTES, 4, String::length);
+        cache.put(1L, "newer");
+
+        cache.putIfAbsent(1L, "loaded earlier");
+        cache.putIfAbsent(2L, "loaded");
+
+        assertEquals("newer", cache.getIfPresent(1L));
+        assertEquals("loaded", cache.getIfPresent(2L));
+        assertEquals(new CacheStats(2, 0), cache.stats());
+    }
+
+    private static void assertHolds(LongKeyCache<String> cache, Map<Long, String> expected) {
+        for (int k = 0; k < 300; k++) {
+            long key = k * 1_000_003L;
+            assertEquals(expected.get(key), cache.getIfPresent(key), "key " + key);
+        }
+        assertTrue(expected.size() <= 300);
+    }
+}
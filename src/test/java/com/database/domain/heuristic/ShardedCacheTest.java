@@ -0,0 +1,85 @@
+package com.database.domain.heuristic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedCacheTest {
+    @Test
+    void splitsTheCapacityOverTheShards() {
+        List<Long> shardWeights = new ArrayList<>();
+        new ShardedCache<>(100, 8, shardWeight -> {
+            shardWeights.add(shardWeight);
+            return lruShard(shardWeight);
+        });
+
+        // rounded up, so the shards together hold at least the maximum
+        assertEquals(List.of(13L, 13L, 13L, 13L, 13L, 13L, 13L, 13L), shardWeights);
+    }
+
+    @Test
+    void keepsEveryShardWithinItsPart() {
+        ShardedCache<Long, String> cache = new ShardedCache<>(64, 4, ShardedCacheTest::lruShard);
+        for (long key = 0; key < 1_000; key++) {
+            cache.put(key, "value-" + key);
+        }
+
+        int cached = 0;
+        for (long key = 0; key < 1_000; key++) {
+            String value = cache.getIfPresent(key);
+            if (value != null) {
+                assertEquals("value-" + key, value);
+                cached++;
+            }
+        }
+
+        assertTrue(cached <= 64, cached + " cached");
+        // the last key put is still cached
+        assertEquals("value-999", cache.getIfPresent(999L));
+        assertEquals(new CacheStats(cached + 1, 1_000 - cached), cache.stats());
+    }
+
+    @Test
+    void servesConcurrentReadersAndWriters() throws InterruptedException {
+        ShardedCache<Long, String> cache = new ShardedCache<>(1_000, 16, ShardedCacheTest::lruShard);
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (long i = 0; i < 20_000; i++) {
+                        long key = i % 2_000;
+                        cache.put(key, "value-" + key);
+                        String value = cache.getIfPresent((key * 7) % 2_000);
+                        assertTrue(value == null || value.equals("value-" + (key * 7) % 2_000), value);
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), List.copyOf(failures));
+        CacheStats stats = cache.stats();
+        assertEquals(8 * 20_000, stats.hits() + stats.misses());
+    }
+
+    @Test
+    void rejectsAShardCountThatIsNotAPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ShardedCache<Long, String>(100, 3, ShardedCacheTest::lruShard));
+    }
+
+    private static Cache<Long, String> lruShard(long shardWeight) {
+        return new LRUCache<>(shardWeight, Weigher.singleton());
+    }
+}
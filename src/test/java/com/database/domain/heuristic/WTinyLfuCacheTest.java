@@ -0,0 +1,115 @@
+package com.database.domain.heuristic;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WTinyLfuCacheTest {
+    private static final int CAPACITY = 100;
+    private static final int HOT_KEYS = 50;
+
+    @Test
+    void keepsFrequentlyReadKeysThroughAScan() {
+        WTinyLfuCache<Long, String> tinyLfu = new WTinyLfuCache<>(CAPACITY);
+        LRUCache<Long, String> lru = new LRUCache<>(CAPACITY);
+
+        readHotKeysThenScan(tinyLfu);
+        readHotKeysThenScan(lru);
+
+        assertTrue(cachedHotKeys(tinyLfu) >= HOT_KEYS * 9 / 10, cachedHotKeys(tinyLfu) + " hot keys cached");
+        assertEquals(0, cachedHotKeys(lru));
+    }
+
+    @Test
+    void servesAKeyFromTheWindowRightAfterItsPut() {
+        WTinyLfuCache<Long, String> cache = new WTinyLfuCache<>(CAPACITY);
+        readHotKeysThenScan(cache);
+
+        cache.put(-1L, "new");
+
+        assertEquals("new", cache.getIfPresent(-1L));
+    }
+
+    @Test
+    void neverHoldsMoreThanItsCapacity() {
+        WTinyLfuCache<Long, String> cache = new WTinyLfuCache<>(CAPACITY);
+        for (long key = 0; key < 10_000; key++) {
+            cache.put(key % 300, "value");
+            cache.getIfPresent(key % 7);
+        }
+
+        int cached = 0;
+        for (long key = 0; key < 300; key++) {
+            if (cache.getIfPresent(key) != null) {
+                cached++;
+            }
+        }
+        assertTrue(cached <= CAPACITY, cached + " cached");
+    }
+
+    @Test
+    void boundsTheTotalWeightOfItsEntries() {
+        WTinyLfuCache<Long, String> cache = new WTinyLfuCache<>(1_000, (key, value) -> value.length());
+        Random random = new Random(42);
+        for (long key = 0; key < 10_000; key++) {
+            readThrough(cache, key % 500, "x".repeat(1 + random.nextInt(50)));
+        }
+
+        long weight = 0;
+        for (long key = 0; key < 500; key++) {
+            String value = cache.getIfPresent(key);
+            weight += value == null ? 0 : value.length();
+        }
+        assertTrue(weight <= 1_000, "weight " + weight);
+    }
+
+    @Test
+    void dropsAValueReplacedByOneHeavierThanTheCache() {
+        WTinyLfuCache<Long, String> cache = new WTinyLfuCache<>(100, (key, value) -> value.length());
+        cache.put(1L, "old");
+
+        cache.put(1L, "x".repeat(101));
+        cache.put(2L, "y".repeat(101));
+
+        assertNull(cache.getIfPresent(1L));
+        assertNull(cache.getIfPresent(2L));
+    }
+
+    /**
+     * Reads every hot key a few times, loading it on a miss, then reads ten times the capacity of other keys once.
+     */
+    private static void readHotKeysThenScan(Cache<Long, String> cache) {
+        for (int round = 0; round < 5; round++) {
+            for (long key = 0; key < HOT_KEYS; key++) {
+                readThrough(cache, key);
+            }
+        }
+        for (long key = 1_000; key < 1_000 + 10 * CAPACITY; key++) {
+            readThrough(cache, key);
+        }
+    }
+
+    private static void readThrough(Cache<Long, String> cache, long key) {
+        readThrough(cache, key, "value-" + key);
+    }
+
+    private static void readThrough(Cache<Long, String> cache, long key, String value) {
+        if (cache.getIfPresent(key) == null) {
+            cache.putIfAbsent(key, value);
+        }
+    }
+
+    private static int cachedHotKeys(Cache<Long, String> cache) {
+        int cached = 0;
+        for (long key = 0; key < HOT_KEYS; key++) {
+            if (cache.getIfPresent(key) != null) {
+                cached++;
+            }
+        }
+        return cached;
+    }
+}
@@ -0,0 +1,262 @@
+package com.database.replication;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.database.replication.dto.BinaryProtocol;
+import com.database.replication.dto.OperationTypeDto;
+import com.database.replication.dto.response.ResponseSingleKeyValueDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the server with a {@link PipelinedConnection} and plain sockets, speaking lines or {@link BinaryProtocol}
+ * frames. GET answers with "v" and the key, after waiting for {@link #slowGets} if the key is negative; any other
+ * command fails.
+ */
+class EventLoopServerTest {
+    // low, so a pipelining client fills the queue of its connection
+    private static final int MAX_IN_FLIGHT_COMMANDS = 4;
+
+    private final CountDownLatch slowGets = new CountDownLatch(1);
+
+    private ExecutorService commandExecutor;
+    private EventLoopServer server;
+    private NodeAddress address;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            address = new NodeAddress("127.0.0.1", socket.getLocalPort());
+        }
+        commandExecutor = Executors.newFixedThreadPool(8);
+        server = new EventLoopServer("test", address, commandExecutor, 2, 60_000, 16, MAX_IN_FLIGHT_COMMANDS,
+                (command, remote) -> {
+                    if (command.text() != null) {
+                        if (!command.text().startsWith("GET|")) {
+                            throw new IllegalArgumentException("Only GET is served");
+                        }
+                        long key = Long.parseLong(command.text().substring(4));
+                        if (key < 0) {
+                            await(slowGets);
+                        }
+                        return ByteBuffer.wrap(("v" + key + "\n").getBytes(StandardCharsets.UTF_8));
+                    }
+                    ByteBuffer body = command.binary();
+                    if (BinaryProtocol.readType(body) != OperationTypeDto.GET) {
+                        throw new IllegalArgumentException("Only GET is served");
+                    }
+                    long key = BinaryProtocol.readLong(body);
+                    if (key < 0) {
+                        await(slowGets);
+                    }
+                    return BinaryProtocol.keyValue(new ResponseSingleKeyValueDto(key, "v" + key));
+                });
+        Thread.ofPlatform().daemon().start(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        awaitListening();
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowGets.countDown();
+        server.close();
+        commandExecutor.shutdownNow();
+    }
+
+    @Test
+    void servesLinesOnAConnectionNotStartingWithTheMagicByte() throws Exception {
+        try (Socket socket = new Socket(address.host(), address.port())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            out.write("GET|1\nGET|2\nPUT|3:x\nGET|4\r\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+
+            assertEquals("v1", in.readLine());
+            assertEquals("v2", in.readLine());
+            assertEquals("ERROR", in.readLine());
+            assertEquals("v4", in.readLine());
+        }
+    }
+
+    @Test
+    void answersPipelinedLinesInOrderBeyondTheQueueLimit() throws Exception {
+        try (Socket socket = new Socket(address.host(), address.port())) {
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            StringBuilder lines = new StringBuilder("GET|-1\n");
+            for (int key = 0; key < 100 * MAX_IN_FLIGHT_COMMANDS; key++) {
+                lines.append("GET|").append(key).append('\n');
+            }
+
+            out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            slowGets.countDown();
+
+            assertEquals("v-1", in.readLine());
+            for (int key = 0; key < 100 * MAX_IN_FLIGHT_COMMANDS; key++) {
+                assertEquals("v" + key, in.readLine());
+            }
+        }
+    }
+
+    @Test
+    void matchesResponsesToRequestsAnsweredOutOfOrder() throws Exception {
+        try (PipelinedConnection connection = new PipelinedConnection(address)) {
+            CompletableFuture<ByteBuffer> slow = connection.sendAsync(BinaryProtocol.get(-1));
+            List<CompletableFuture<ByteBuffer>> fast = new ArrayList<>();
+            for (long key = 0; key < 1_000; key++) {
+                fast.add(connection.sendAsync(BinaryProtocol.get(key)));
+            }
+
+            for (int key = 0; key < fast.size(); key++) {
+                assertEquals(new ResponseSingleKeyValueDto((long) key, "v" + key),
+                        keyValue(fast.get(key).get(10, TimeUnit.SECONDS)));
+            }
+            assertFalse(slow.isDone());
+            slowGets.countDown();
+            assertEquals(new ResponseSingleKeyValueDto(-1L, "v-1"), keyValue(slow.get(10, TimeUnit.SECONDS)));
+        }
+    }
+
+    @Test
+    void answersAFailingCommandWithAnError() throws Exception {
+        ByteBuffer unknownOpcode = ByteBuffer.allocate(BinaryProtocol.FRAME_HEADER_BYTES + 1)
+                .putInt(1).putInt(0).put((byte) 99).flip();
+        try (Socket socket = new Socket(address.host(), address.port())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(BinaryProtocol.MAGIC);
+
+            send(out, unknownOpcode, 1);
+            send(out, BinaryProtocol.put(1, "x"), 2);
+            send(out, BinaryProtocol.get(2), 3);
+            Map<Integer, ByteBuffer> responses = receive(in, 3);
+
+            assertEquals(BinaryProtocol.Status.ERROR, BinaryProtocol.readStatus(responses.get(1)));
+            assertEquals(BinaryProtocol.Status.ERROR, BinaryProtocol.readStatus(responses.get(2)));
+            assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(responses.get(3)));
+            assertEquals(new ResponseSingleKeyValueDto(2L, "v2"), BinaryProtocol.readKeyValue(responses.get(3)));
+        }
+    }
+
+    @Test
+    void closesAConnectionSendingAnOversizedFrame() throws Exception {
+        try (Socket socket = new Socket(address.host(), address.port())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(ByteBuffer.allocate(1 + BinaryProtocol.FRAME_HEADER_BYTES)
+                    .put((byte) BinaryProtocol.MAGIC)
+                    .putInt(BinaryProtocol.MAX_FRAME_BYTES + 1)
+                    .putInt(0)
+                    .array());
+            out.flush();
+
+            assertClosedByServer(socket);
+        }
+    }
+
+    @Test
+    void closesAConnectionSendingAnOversizedLine() throws Exception {
+        try (Socket socket = new Socket(address.host(), address.port())) {
+            OutputStream out = socket.getOutputStream();
+            byte[] line = new byte[BinaryProtocol.MAX_FRAME_BYTES + 1];
+            Arrays.fill(line, (byte) 'x');
+
+            try {
+                out.write(line);
+                out.flush();
+            } catch (IOException e) {
+                // closed by the server while the line was still being sent
+                return;
+            }
+            assertClosedByServer(socket);
+        }
+    }
+
+    private static ResponseSingleKeyValueDto keyValue(ByteBuffer body) {
+        assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(body));
+        return BinaryProtocol.readKeyValue(body);
+    }
+
+    private static void assertClosedByServer(Socket socket) throws IOException {
+        socket.setSoTimeout(10_000);
+        try {
+            assertEquals(-1, socket.getInputStream().read());
+        } catch (SocketException e) {
+            // reset, the server closed the connection with bytes left unread
+        }
+    }
+
+    private static void send(DataOutputStream out, ByteBuffer frame, int requestId) throws IOException {
+        BinaryProtocol.withRequestId(frame, requestId);
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        out.flush();
+    }
+
+    /**
+     * Reads the given number of response frames, by request id; they may come in any order.
+     */
+    private static Map<Integer, ByteBuffer> receive(DataInputStream in, int count) throws IOException {
+        Map<Integer, ByteBuffer> responses = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            int requestId = in.readInt();
+            responses.put(requestId, ByteBuffer.wrap(BinaryProtocol.readBody(in, length)));
+        }
+        return responses;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitListening() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try {
+                Socket socket = new Socket(address.host(), address.port());
+                socket.close();
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new AssertionError("Server not listening on " + address, e);
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.database.replication;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.database.replication.dto.BinaryProtocol;
+import com.database.replication.dto.response.ResponseSingleKeyValueDto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Runs against a fake node answering GET with "v" and the key. It drops its first connection once it received
+ * {@link #receivedOnTheFirstConnection} requests, of which it answered the first
+ * {@link #answeredOnTheFirstConnection}, and records the keys the connections after it get.
+ */
+class PipelinedConnectionTest {
+    private static final int ANSWERED = 1_000;
+    private static final int UNANSWERED = 100;
+
+    private final List<Long> receivedAfterTheDrop = new ArrayList<>();
+    private volatile int answeredOnTheFirstConnection = ANSWERED;
+    private volatile int receivedOnTheFirstConnection = ANSWERED + UNANSWERED;
+    private ServerSocket serverSocket;
+    private NodeAddress address;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+        address = new NodeAddress("127.0.0.1", serverSocket.getLocalPort());
+        Thread.ofPlatform().daemon().start(this::serve);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        serverSocket.close();
+    }
+
+    @Test
+    void retriesTheRequestsOfABrokenReusedConnectionInTheOrderTheyWereSent() throws Exception {
+        List<CompletableFuture<ByteBuffer>> responses = new ArrayList<>();
+        try (PipelinedConnection connection = new PipelinedConnection(address)) {
+            // one at a time, so the ids move past the few buckets of the map of requests in flight
+            for (long key = 0; key < ANSWERED; key++) {
+                connection.send(BinaryProtocol.get(key));
+            }
+            for (long key = ANSWERED; key < ANSWERED + UNANSWERED; key++) {
+                responses.add(connection.sendAsync(BinaryProtocol.get(key)));
+            }
+
+            for (int i = 0; i < UNANSWERED; i++) {
+                long key = ANSWERED + i;
+                ByteBuffer body = responses.get(i).get(10, TimeUnit.SECONDS);
+                assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(body));
+                assertEquals(new ResponseSingleKeyValueDto(key, "v" + key), BinaryProtocol.readKeyValue(body));
+            }
+        }
+
+        List<Long> expected = new ArrayList<>();
+        for (long key = ANSWERED; key < ANSWERED + UNANSWERED; key++) {
+            expected.add(key);
+        }
+        synchronized (receivedAfterTheDrop) {
+            assertEquals(expected, receivedAfterTheDrop);
+        }
+    }
+
+    @Test
+    void failsARequestSentOnAFreshConnectionThatBreaks() throws Exception {
+        answeredOnTheFirstConnection = 0;
+        receivedOnTheFirstConnection = 1;
+        try (PipelinedConnection connection = new PipelinedConnection(address)) {
+            assertThrows(IOException.class, () -> connection.send(BinaryProtocol.get(0)));
+
+            // the next request opens a new connection
+            assertEquals(new ResponseSingleKeyValueDto(7L, "v7"),
+                    BinaryProtocol.readKeyValue(skipStatus(connection.send(BinaryProtocol.get(7)))));
+        }
+    }
+
+    private void serve() {
+        boolean first = true;
+        while (!serverSocket.isClosed()) {
+            try (Socket socket = serverSocket.accept()) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                OutputStream out = socket.getOutputStream();
+                assertEquals(BinaryProtocol.MAGIC, in.read());
+                int answered = answeredOnTheFirstConnection;
+                for (int received = 0; !first || received < receivedOnTheFirstConnection; received++) {
+                    int length = in.readInt();
+                    int requestId = in.readInt();
+                    ByteBuffer body = ByteBuffer.wrap(BinaryProtocol.readBody(in, length));
+                    BinaryProtocol.readType(body);
+                    long key = BinaryProtocol.readLong(body);
+                    if (first && received >= answered) {
+                        continue;
+                    }
+                    if (!first) {
+                        synchronized (receivedAfterTheDrop) {
+                            receivedAfterTheDrop.add(key);
+                        }
+                    }
+                    ByteBuffer response = BinaryProtocol.withRequestId(
+                            BinaryProtocol.keyValue(new ResponseSingleKeyValueDto(key, "v" + key)), requestId);
+                    out.write(response.array(), response.arrayOffset() + response.position(), response.remaining());
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // the client or the test closed the connection
+            }
+            first = false;
+        }
+    }
+
+    private static ByteBuffer skipStatus(ByteBuffer body) {
+        assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(body));
+        return body;
+    }
+}
@@ -0,0 +1,165 @@
+package com.database.replication.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.database.replication.dto.response.ResponseManyKeysValuesDto;
+import com.database.replication.dto.response.ResponseSingleKeyValueDto;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryProtocolTest {
+    private static final long[] KEYS = {0, 1, -1, 63, -64, 64, 300, Long.MAX_VALUE, Long.MIN_VALUE};
+
+    @Test
+    void roundTripsSingleKeyRequests() {
+        for (long key : KEYS) {
+            ByteBuffer get = body(BinaryProtocol.get(key));
+            assertEquals(OperationTypeDto.GET, BinaryProtocol.readType(get));
+            assertEquals(key, BinaryProtocol.readLong(get));
+            assertFalse(get.hasRemaining());
+
+            ByteBuffer delete = body(BinaryProtocol.delete(key));
+            assertEquals(OperationTypeDto.DEL, BinaryProtocol.readType(delete));
+            assertEquals(key, BinaryProtocol.readLong(delete));
+            assertFalse(delete.hasRemaining());
+
+            ByteBuffer put = body(BinaryProtocol.put(key, "value of " + key));
+            assertEquals(OperationTypeDto.PUT, BinaryProtocol.readType(put));
+            assertEquals(key, BinaryProtocol.readLong(put));
+            assertEquals("value of " + key, BinaryProtocol.readString(put));
+            assertFalse(put.hasRemaining());
+        }
+    }
+
+    @Test
+    void carriesValuesTheLineProtocolCannot() {
+        String value = "a|b,c:d\nnext line zażółć 😀";
+
+        ByteBuffer put = body(BinaryProtocol.put(7, value));
+        BinaryProtocol.readType(put);
+        BinaryProtocol.readLong(put);
+
+        assertEquals(value, BinaryProtocol.readString(put));
+    }
+
+    @Test
+    void roundTripsABatchLargerThanTheInitialBuffer() {
+        BinaryProtocol.FrameWriter writer = BinaryProtocol.request(OperationTypeDto.BATCH_PUT).writeCount(10_000);
+        for (long key = 0; key < 10_000; key++) {
+            writer.writeLong(-key).writeString("value-" + key);
+        }
+
+        ByteBuffer batch = body(writer.frame());
+
+        assertEquals(OperationTypeDto.BATCH_PUT, BinaryProtocol.readType(batch));
+        assertEquals(10_000, BinaryProtocol.readCount(batch));
+        for (long key = 0; key < 10_000; key++) {
+            assertEquals(-key, BinaryProtocol.readLong(batch));
+            assertEquals("value-" + key, BinaryProtocol.readString(batch));
+        }
+        assertFalse(batch.hasRemaining());
+    }
+
+    @Test
+    void roundTripsResponses() {
+        ByteBuffer keyValue = body(BinaryProtocol.keyValue(new ResponseSingleKeyValueDto(-5L, "five")));
+        assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(keyValue));
+        assertEquals(new ResponseSingleKeyValueDto(-5L, "five"), BinaryProtocol.readKeyValue(keyValue));
+
+        List<ResponseManyKeysValuesDto.KeyValue> keyValues = new ArrayList<>();
+        for (long key : KEYS) {
+            keyValues.add(new ResponseManyKeysValuesDto.KeyValue(key, key % 2 == 0 ? "" : "v" + key));
+        }
+        ByteBuffer range = body(BinaryProtocol.keyValues(new ResponseManyKeysValuesDto(keyValues)));
+        assertEquals(BinaryProtocol.Status.OK, BinaryProtocol.readStatus(range));
+        assertEquals(keyValues, BinaryProtocol.readKeyValues(range).keyValues());
+
+        for (BinaryProtocol.Status status : BinaryProtocol.Status.values()) {
+            ByteBuffer body = body(BinaryProtocol.status(status));
+            assertEquals(status, BinaryProtocol.readStatus(body));
+            assertFalse(body.hasRemaining());
+        }
+    }
+
+    @Test
+    void encodesCommandsOfTheLineProtocol() {
+        assertArrayEquals(bytes(BinaryProtocol.get(-3)), bytes(BinaryProtocol.fromText("GET|-3")));
+        assertArrayEquals(bytes(BinaryProtocol.put(3, "x")), bytes(BinaryProtocol.fromText("PUT|3:x")));
+        assertArrayEquals(bytes(BinaryProtocol.delete(3)), bytes(BinaryProtocol.fromText("DEL|3")));
+        assertArrayEquals(bytes(BinaryProtocol.getRange(1, 9)), bytes(BinaryProtocol.fromText("GET_RANGE|1:9")));
+        assertArrayEquals(bytes(BinaryProtocol.heartbeat()), bytes(BinaryProtocol.fromText("HEARTBEAT|")));
+        assertArrayEquals(
+                bytes(BinaryProtocol.request(OperationTypeDto.BATCH_PUT).writeCount(2)
+                        .writeLong(1).writeString("a")
+                        .writeLong(2).writeString("b")
+                        .frame()),
+                bytes(BinaryProtocol.fromText("BATCH_PUT|1:a,2:b")));
+    }
+
+    @Test
+    void setsTheRequestIdInTheHeader() {
+        ByteBuffer frame = BinaryProtocol.withRequestId(BinaryProtocol.get(1), 42);
+
+        assertEquals(42, frame.getInt(frame.position() + Integer.BYTES));
+        assertEquals(frame.remaining() - BinaryProtocol.FRAME_HEADER_BYTES, frame.getInt(frame.position()));
+    }
+
+    @Test
+    void readsABodyLargerThanTheInitialBuffer() throws IOException {
+        byte[] sent = new byte[5 * BinaryProtocol.INITIAL_BODY_BYTES + 3];
+        for (int i = 0; i < sent.length; i++) {
+            sent[i] = (byte) i;
+        }
+
+        byte[] body = BinaryProtocol.readBody(new DataInputStream(new ByteArrayInputStream(sent)), sent.length);
+
+        assertArrayEquals(sent, body);
+    }
+
+    @Test
+    void rejectsInvalidFrameLengths() {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(new byte[16]));
+
+        assertThrows(IOException.class, () -> BinaryProtocol.readBody(in, 0));
+        assertThrows(IOException.class, () -> BinaryProtocol.readBody(in, -1));
+        assertThrows(IOException.class, () -> BinaryProtocol.readBody(in, BinaryProtocol.MAX_FRAME_BYTES + 1));
+        // a header announcing more than is ever sent
+        assertThrows(EOFException.class, () -> BinaryProtocol.readBody(in, BinaryProtocol.MAX_FRAME_BYTES));
+    }
+
+    @Test
+    void rejectsMalformedBodies() {
+        // a count larger than the rest of the frame
+        ByteBuffer count = ByteBuffer.wrap(new byte[]{100, 1, 2});
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.readCount(count));
+        // a varint longer than any long
+        ByteBuffer varint = ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1});
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.readLong(varint));
+        assertThrows(IllegalArgumentException.class, () -> BinaryProtocol.readType(ByteBuffer.wrap(new byte[]{99})));
+    }
+
+    /**
+     * Checks the header of a frame and returns its body.
+     */
+    private static ByteBuffer body(ByteBuffer frame) {
+        assertEquals(frame.remaining() - BinaryProtocol.FRAME_HEADER_BYTES, frame.getInt(frame.position()));
+        return frame.slice(frame.position() + BinaryProtocol.FRAME_HEADER_BYTES,
+                frame.remaining() - BinaryProtocol.FRAME_HEADER_BYTES);
+    }
+
+    private static byte[] bytes(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(frame.position(), bytes);
+        return bytes;
+    }
+}